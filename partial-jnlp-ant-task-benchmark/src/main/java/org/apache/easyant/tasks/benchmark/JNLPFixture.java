@@ -0,0 +1,233 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.easyant.tasks.JNLPTask;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * A synthetic application shared by the benchmarks: a jnlp file, a main jar
+ * and a lib directory holding the given number of small jars, either all in
+ * the same directory (flat) or spread over two levels of sub directories
+ * (nested).
+ */
+public final class JNLPFixture {
+
+    /** Number of jars per directory of a nested layout. */
+    private static final int JARS_PER_DIRECTORY = 10;
+
+    /** Number of directories per group of a nested layout. */
+    private static final int DIRECTORIES_PER_GROUP = 10;
+
+    private final File dir;
+
+    private final File jnlpFile;
+
+    private final File mainJar;
+
+    private final File libDir;
+
+    private final List<File> jars;
+
+    private JNLPFixture(File dir, List<File> jars) {
+        this.dir = dir;
+        this.jnlpFile = new File(dir, "application.jnlp");
+        this.mainJar = new File(dir, "main.jar");
+        this.libDir = new File(dir, "lib");
+        this.jars = jars;
+    }
+
+    /**
+     * Creates a fixture in a new temporary directory.
+     * 
+     * @param jarCount
+     *            the number of jars of the lib directory
+     * @param nested
+     *            true to spread the jars over sub directories
+     */
+    public static JNLPFixture create(int jarCount, boolean nested)
+            throws IOException {
+        File dir = File.createTempFile("partial-jnlp-benchmark", "");
+        FileUtils.delete(dir);
+        if (!dir.mkdirs()) {
+            throw new IOException("unable to create " + dir);
+        }
+        byte[] jarContent = createJar();
+        File libDir = new File(dir, "lib");
+        List<File> jars = new ArrayList<File>(jarCount);
+        for (int i = 0; i < jarCount; i++) {
+            File parent = libDir;
+            if (nested) {
+                int directory = i / JARS_PER_DIRECTORY;
+                parent = new File(libDir, "group" + directory / DIRECTORIES_PER_GROUP
+                        + File.separator + "module" + directory);
+            }
+            File jar = new File(parent, "dependency" + i + ".jar");
+            write(jar, jarContent);
+            jars.add(jar);
+        }
+        JNLPFixture fixture = new JNLPFixture(dir, jars);
+        write(fixture.mainJar, jarContent);
+        writeJnlp(fixture.jnlpFile, jarCount);
+        return fixture;
+    }
+
+    /**
+     * Writes a jnlp file whose resources section holds the given number of
+     * obsolete jar entries, with a description part of a proportional size.
+     */
+    public static void writeJnlp(File jnlpFile, int entries) throws IOException {
+        PrintWriter writer = new PrintWriter(jnlpFile, "UTF-8");
+        try {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.println("<jnlp spec=\"1.0+\" codebase=\"http://localhost/app\">");
+            writer.println("    <information>");
+            writer.println("        <title>benchmark</title>");
+            writer.println("        <vendor>Apache EasyAnt</vendor>");
+            for (int i = 0; i < entries / 10; i++) {
+                writer.println("        <description kind=\"tooltip\">description "
+                        + i + "</description>");
+            }
+            writer.println("    </information>");
+            writer.println("    <security>");
+            writer.println("        <all-permissions/>");
+            writer.println("    </security>");
+            writer.println("    <resources>");
+            for (int i = 0; i < entries; i++) {
+                writer.println("        <jar href=\"lib/old-dependency" + i
+                        + ".jar\" download=\"eager\" main=\"false\"/>");
+            }
+            writer.println("    </resources>");
+            writer.println("    <application-desc main-class=\"org.apache.Main\"/>");
+            writer.println("</jnlp>");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return a fileset selecting every jar of the lib directory.
+     */
+    public FileSet createFileSet(Project project) {
+        FileSet fileSet = new FileSet();
+        fileSet.setProject(project);
+        fileSet.setDir(libDir);
+        fileSet.setIncludes("**/*.jar");
+        return fileSet;
+    }
+
+    /**
+     * @return a task configured to rewrite the jnlp file of this fixture.
+     */
+    public JNLPTask createTask(Project project) {
+        JNLPTask task = new JNLPTask();
+        task.setProject(project);
+        task.setJnlpFile(jnlpFile.getAbsolutePath());
+        task.setMainJar(mainJar.getAbsolutePath());
+        task.addConfiguredFileset(createFileSet(project));
+        return task;
+    }
+
+    /**
+     * @return a project whose base directory is the fixture directory.
+     */
+    public Project createProject() {
+        Project project = new Project();
+        project.setBaseDir(dir);
+        return project;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public File getJnlpFile() {
+        return jnlpFile;
+    }
+
+    public File getMainJar() {
+        return mainJar;
+    }
+
+    public List<File> getJars() {
+        return jars;
+    }
+
+    /**
+     * Deletes the fixture directory.
+     */
+    public void delete() {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        FileUtils.delete(file);
+    }
+
+    /**
+     * @return the content of a small valid jar, shared by every jar of the
+     *         fixture.
+     */
+    private static byte[] createJar() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        try {
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zip.write("Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("org/apache/Benchmark.class"));
+            zip.write(new byte[256]);
+            zip.closeEntry();
+        } finally {
+            zip.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("unable to create " + parent);
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            FileUtils.close(out);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.easyant.tasks.JNLPTask;
+import org.apache.easyant.tasks.JNLPTemplate;
+import org.apache.tools.ant.Project;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link JNLPTask} on a synthetic application through its
+ * public API only, stopping after successive phases: an execution leaving
+ * an up to date jnlp file untouched (validation, scan of the filesets and
+ * fingerprint), the generation of the jnlp file from a template (no parse),
+ * and a full rewrite (parse, DOM build, serialization and replacement of
+ * the file).
+ * <p>
+ * The parse, serialization and replacement of the file can't be isolated
+ * through the public API; the task reports the time of each of its phases
+ * in a build through its metricsProperty attribute.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JNLPPhasesBenchmark {
+
+    @Param({ "100", "1000", "10000", "50000" })
+    private int jars;
+
+    @Param({ "false", "true" })
+    private boolean nested;
+
+    private JNLPFixture fixture;
+
+    private Project project;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = JNLPFixture.create(jars, nested);
+        project = fixture.createProject();
+        // writes the fingerprint the up to date executions compare with
+        createIncrementalTask().execute();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.delete();
+    }
+
+    @Benchmark
+    public long upToDate() {
+        createIncrementalTask().execute();
+        return fixture.getJnlpFile().length();
+    }
+
+    @Benchmark
+    public long generate() {
+        JNLPTask task = fixture.createTask(project);
+        JNLPTemplate template = new JNLPTemplate();
+        template.setMainClass("org.apache.easyant.Main");
+        JNLPTemplate.Information information = template.createInformation();
+        information.setTitle("benchmark");
+        information.setVendor("Apache EasyAnt");
+        task.addConfiguredTemplate(template);
+        task.execute();
+        return fixture.getJnlpFile().length();
+    }
+
+    @Benchmark
+    public long rewrite() {
+        fixture.createTask(project).execute();
+        return fixture.getJnlpFile().length();
+    }
+
+    private JNLPTask createIncrementalTask() {
+        JNLPTask task = fixture.createTask(project);
+        task.setIncremental(true);
+        return task;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks.benchmark;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.easyant.tasks.JNLPTask;
+import org.apache.tools.ant.Project;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the startup cost of many small {@link JNLPTask} executions in the
+ * same project, as in a build generating a jnlp file per client variant,
+ * with the XML implementations cached and looked up afresh.
+ * <p>
+ * The task caches the DOM and StAX implementations by context class loader,
+ * so the uncached executions each run with a new, empty context class
+ * loader: the lookup then scans the same class path as the first execution
+ * of a build.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JNLPStartupBenchmark {
+
+    /** Number of jars of the application, small to leave the startup visible. */
+    private static final int JARS = 10;
+
+    @Param({ "100" })
+    private int executions;
+
+    @Param({ "false", "true" })
+    private boolean streaming;
+
+    @Param({ "true", "false" })
+    private boolean cached;
+
+    private JNLPFixture fixture;
+
+    private Project project;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = JNLPFixture.create(JARS, false);
+        project = fixture.createProject();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.delete();
+    }
+
+    @Benchmark
+    public long execute() {
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        long length = 0;
+        for (int i = 0; i < executions; i++) {
+            if (!cached) {
+                thread.setContextClassLoader(new URLClassLoader(new URL[0],
+                        contextClassLoader));
+            }
+            try {
+                JNLPTask task = fixture.createTask(project);
+                task.setStreaming(streaming);
+                task.execute();
+                length += fixture.getJnlpFile().length();
+            } finally {
+                thread.setContextClassLoader(contextClassLoader);
+            }
+        }
+        return length;
+    }
+}
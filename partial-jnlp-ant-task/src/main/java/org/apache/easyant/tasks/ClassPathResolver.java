@@ -0,0 +1,200 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Finds the jars reachable from main jars through the Class-Path attribute of
+ * their manifests, transitively. The manifests of each level are read in
+ * parallel, through the central directory of the jars, and the Class-Path of
+ * every jar is cached by path, size and last modification date for the
+ * lifetime of the resolver, so a resolver kept across successive resolutions
+ * reads again only the manifests of the jars which changed.
+ */
+final class ClassPathResolver {
+
+    private final ConcurrentMap<String, CachedClassPath> cache = new ConcurrentHashMap<String, CachedClassPath>();
+
+    private final int threads;
+
+    private final List<String> missing = new ArrayList<String>();
+
+    /**
+     * @param threads
+     *            the maximum number of manifests read in parallel.
+     */
+    ClassPathResolver(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return the jars reachable from the given ones, the given ones excluded,
+     *         in breadth first order.
+     */
+    Set<File> resolve(Collection<File> roots) {
+        missing.clear();
+        Set<File> visited = new LinkedHashSet<File>();
+        List<File> level = new ArrayList<File>();
+        for (File root : roots) {
+            if (visited.add(root.getAbsoluteFile())) {
+                level.add(root.getAbsoluteFile());
+            }
+        }
+        while (!level.isEmpty()) {
+            List<Callable<List<String>>> reads = new ArrayList<Callable<List<String>>>(
+                    level.size());
+            for (final File jar : level) {
+                reads.add(new Callable<List<String>>() {
+                    public List<String> call() throws IOException {
+                        return classPath(jar);
+                    }
+                });
+            }
+            List<List<String>> classPaths = Workers.invokeAll(reads, threads);
+            List<File> next = new ArrayList<File>();
+            for (int i = 0; i < level.size(); i++) {
+                for (String entry : classPaths.get(i)) {
+                    File dependency = resolve(level.get(i), entry);
+                    if (dependency != null && visited.add(dependency)) {
+                        next.add(dependency);
+                    }
+                }
+            }
+            level = next;
+        }
+        for (File root : roots) {
+            visited.remove(root.getAbsoluteFile());
+        }
+        return visited;
+    }
+
+    /**
+     * @return the Class-Path entries which don't point to an existing jar,
+     *         found by the last resolution.
+     */
+    List<String> getMissing() {
+        return missing;
+    }
+
+    /**
+     * @return the jar a Class-Path entry points to, null if it is not a local
+     *         jar file.
+     */
+    private File resolve(File jar, String entry) {
+        File dependency;
+        try {
+            URI uri = jar.toURI().resolve(entry);
+            if (!"file".equals(uri.getScheme()) || entry.endsWith("/")) {
+                return null;
+            }
+            dependency = new File(uri).getAbsoluteFile();
+        } catch (IllegalArgumentException e) {
+            missing.add(entry + " (from " + jar + ")");
+            return null;
+        }
+        if (!dependency.isFile()) {
+            missing.add(entry + " (from " + jar + ")");
+            return null;
+        }
+        return dependency;
+    }
+
+    /**
+     * @return the entries of the Class-Path attribute of the jar, from the
+     *         cache if the jar didn't change.
+     */
+    private List<String> classPath(File jar) throws IOException {
+        String key = jar.getAbsolutePath();
+        long length = jar.length();
+        long lastModified = jar.lastModified();
+        CachedClassPath cached = cache.get(key);
+        if (cached != null && cached.length == length
+                && cached.lastModified == lastModified) {
+            return cached.entries;
+        }
+        List<String> entries = readClassPath(jar);
+        cache.put(key, new CachedClassPath(length, lastModified, entries));
+        return entries;
+    }
+
+    private static List<String> readClassPath(File jar) throws IOException {
+        ZipFile zip = new ZipFile(jar);
+        try {
+            ZipEntry entry = zip.getEntry(JarFile.MANIFEST_NAME);
+            if (entry == null) {
+                return Collections.emptyList();
+            }
+            InputStream input = zip.getInputStream(entry);
+            String classPath;
+            try {
+                classPath = new Manifest(input).getMainAttributes().getValue(
+                        Attributes.Name.CLASS_PATH);
+            } finally {
+                FileUtils.close(input);
+            }
+            if (classPath == null) {
+                return Collections.emptyList();
+            }
+            List<String> entries = new ArrayList<String>();
+            for (StringTokenizer tokens = new StringTokenizer(classPath); tokens
+                    .hasMoreTokens();) {
+                entries.add(tokens.nextToken());
+            }
+            return Collections.unmodifiableList(entries);
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static final class CachedClassPath {
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final List<String> entries;
+
+        private CachedClassPath(long length, long lastModified,
+                List<String> entries) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+    }
+}
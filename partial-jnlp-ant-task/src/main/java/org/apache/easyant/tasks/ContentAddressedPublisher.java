@@ -0,0 +1,130 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Publishes resources under content addressed names: the name of a resource
+ * followed by the beginning of its digest, so an unchanged resource keeps the
+ * same name from a release to another and a changed one gets a new name. The
+ * published files never change, and can be cached forever by the clients.
+ */
+final class ContentAddressedPublisher {
+
+    private static final int DIGEST_LENGTH = 16;
+
+    private final File outputDir;
+
+    private final boolean link;
+
+    /**
+     * @param outputDir
+     *            the directory the resources are published in.
+     * @param link
+     *            true to publish the resources as hard links when the file
+     *            system supports it, false to always copy them.
+     */
+    ContentAddressedPublisher(File outputDir, boolean link) {
+        this.outputDir = outputDir;
+        this.link = link;
+    }
+
+    /**
+     * @return the content addressed name of a file.
+     */
+    static String publishedName(File file, String digest) {
+        String name = file.getName();
+        String hash = digest.substring(0, Math.min(DIGEST_LENGTH, digest.length()));
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0) {
+            return name + "-" + hash;
+        }
+        return name.substring(0, dot) + "-" + hash + name.substring(dot);
+    }
+
+    /**
+     * Publish the given files in parallel. Files already published are left
+     * untouched, as their name guarantees their content.
+     * 
+     * @param digests
+     *            the files to publish, with their digest.
+     * @return the published names indexed by file.
+     */
+    Map<File, String> publishAll(Map<File, String> digests, int threads)
+            throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("unable to create " + outputDir);
+        }
+        List<Callable<String>> jobs = new ArrayList<Callable<String>>(digests.size());
+        for (final Map.Entry<File, String> digest : digests.entrySet()) {
+            jobs.add(new Callable<String>() {
+                public String call() throws IOException {
+                    return publish(digest.getKey(), digest.getValue());
+                }
+            });
+        }
+        List<String> names = Workers.invokeAll(jobs, threads);
+        Map<File, String> result = new LinkedHashMap<File, String>();
+        int i = 0;
+        for (File file : digests.keySet()) {
+            result.put(file, names.get(i++));
+        }
+        return result;
+    }
+
+    private String publish(File file, String digest) throws IOException {
+        String name = publishedName(file, digest);
+        File target = new File(outputDir, name);
+        if (target.isFile()) {
+            return name;
+        }
+        if (link) {
+            try {
+                Files.createLink(target.toPath(), file.toPath());
+                return name;
+            } catch (FileAlreadyExistsException e) {
+                // published meanwhile by another task
+                return name;
+            } catch (UnsupportedOperationException e) {
+                // no hard link on this file system, copy it
+            } catch (FileSystemException e) {
+                // another file system, copy it
+            }
+        }
+        File tmpFile = FileReplacer.createTempFile(target);
+        try {
+            FileUtils.getFileUtils().copyFile(file, tmpFile, null, true);
+            FileReplacer.replace(tmpFile, target);
+        } finally {
+            FileUtils.delete(tmpFile);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Message digest helpers.
+ */
+final class Digests {
+
+    static final String SHA_256 = "SHA-256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Files from this size are read through memory mapping.
+     */
+    private static final long MAPPED_THRESHOLD = 1024 * 1024;
+
+    private static final long MAPPED_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private Digests() {
+    }
+
+    static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException("the digest algorithm " + algorithm
+                    + " is not available", e);
+        }
+    }
+
+    /**
+     * @return the hexadecimal digest of the content of the given file.
+     */
+    static String digest(File file, String algorithm) throws IOException {
+        MessageDigest digest = newDigest(algorithm);
+        FileInputStream input = new FileInputStream(file);
+        try {
+            if (file.length() >= MAPPED_THRESHOLD) {
+                updateMapped(digest, input.getChannel());
+            } else {
+                update(digest, input);
+            }
+        } finally {
+            FileUtils.close(input);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, InputStream input)
+            throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+    }
+
+    private static void updateMapped(MessageDigest digest, FileChannel channel)
+            throws IOException {
+        long size = channel.size();
+        for (long position = 0; position < size; position += MAPPED_CHUNK_SIZE) {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAPPED_CHUNK_SIZE, size - position)));
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
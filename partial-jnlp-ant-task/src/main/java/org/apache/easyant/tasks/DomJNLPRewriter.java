@@ -0,0 +1,196 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSOutput;
+import org.w3c.dom.ls.LSParser;
+import org.w3c.dom.ls.LSSerializer;
+
+/**
+ * Rewrites the jnlp file by loading it entirely in a DOM tree, and serializing
+ * it back with pretty printing.
+ */
+class DomJNLPRewriter implements JNLPRewriter {
+
+    static final String RESOURCES_ENTITY = "resources";
+    private static final String PRETTY_PRINT_FORMAT = "format-pretty-print";
+
+    private final boolean merge;
+
+    /**
+     * @param merge
+     *            true to add the new elements to the existing resources parts
+     *            instead of replacing them.
+     */
+    DomJNLPRewriter(boolean merge) {
+        this.merge = merge;
+    }
+
+    public void rewrite(File jnlpFile, OutputStream output,
+            List<ResourceElement> resources) throws Exception {
+        serialize(build(jnlpFile, resources), output);
+    }
+
+    /**
+     * Parses the jnlp file and updates its resources in memory.
+     */
+    Document build(File jnlpFile, List<ResourceElement> resources)
+            throws Exception {
+        DOMImplementationLS domImpl = XmlProviders.get().getDomImplementation();
+
+        LSParser jnlpBuilder = domImpl.createLSParser(
+                DOMImplementationLS.MODE_SYNCHRONOUS, null);
+        Document jnlpDoc = jnlpBuilder.parseURI(jnlpFile.toURI().toString());
+
+        Node root = jnlpDoc.getDocumentElement();
+        if (merge) {
+            merge(jnlpDoc, root, resources);
+        } else {
+            replace(jnlpDoc, root, resources);
+        }
+        return jnlpDoc;
+    }
+
+    /**
+     * Writes a document built by {@link #build(File, List)}.
+     */
+    void serialize(Document jnlpDoc, OutputStream output) throws Exception {
+        DOMImplementationLS domImpl = XmlProviders.get().getDomImplementation();
+        LSOutput lsOutput = domImpl.createLSOutput();
+        lsOutput.setByteStream(output);
+        LSSerializer serializer = domImpl.createLSSerializer();
+        serializer.getDomConfig().setParameter(PRETTY_PRINT_FORMAT, true);
+        serializer.write(jnlpDoc, lsOutput);
+    }
+
+    private void replace(Document jnlpDoc, Node root,
+            List<ResourceElement> resources) {
+        NodeList nodeList = root.getChildNodes();
+        // backward, as removing a node shifts the following ones
+        for (int i = nodeList.getLength() - 1; i >= 0; i--) {
+            if (RESOURCES_ENTITY.equals(nodeList.item(i).getNodeName())) {
+                root.removeChild(nodeList.item(i));
+            }
+        }
+        for (List<ResourceElement> section : ResourcesMerge.sections(resources)
+                .values()) {
+            if (section.isEmpty()) {
+                continue;
+            }
+            Element resourcesElement = createResources(jnlpDoc, root, section);
+            for (ResourceElement resource : section) {
+                appendElement(resource, jnlpDoc, resourcesElement);
+            }
+        }
+    }
+
+    private void merge(Document jnlpDoc, Node root,
+            List<ResourceElement> resources) {
+        Set<String> existingKeys = new HashSet<String>();
+        Map<String, Element> targets = new HashMap<String, Element>();
+        NodeList nodeList = root.getChildNodes();
+        for (int i = 0; i < nodeList.getLength(); i++) {
+            Node node = nodeList.item(i);
+            if (node.getNodeType() != Node.ELEMENT_NODE
+                    || !RESOURCES_ENTITY.equals(node.getNodeName())) {
+                continue;
+            }
+            Element resourcesElement = (Element) node;
+            NodeList children = resourcesElement.getElementsByTagName("*");
+            for (int j = 0; j < children.getLength(); j++) {
+                Element child = (Element) children.item(j);
+                existingKeys.add(ResourcesMerge.key(child.getNodeName(),
+                        attribute(child, ResourcesMerge.HREF_ATTRIBUTE),
+                        attribute(child, ResourcesMerge.NAME_ATTRIBUTE)));
+            }
+            // the new elements go to the first part of the same platform
+            String sectionKey = sectionKey(resourcesElement);
+            if (!targets.containsKey(sectionKey)) {
+                targets.put(sectionKey, resourcesElement);
+            }
+        }
+        List<ResourceElement> newResources = ResourcesMerge.newResources(
+                resources, existingKeys);
+        for (Map.Entry<String, List<ResourceElement>> section : ResourcesMerge
+                .sections(newResources).entrySet()) {
+            if (section.getValue().isEmpty()) {
+                continue;
+            }
+            Element target = targets.get(section.getKey());
+            if (target == null) {
+                target = createResources(jnlpDoc, root, section.getValue());
+            }
+            for (ResourceElement resource : section.getValue()) {
+                appendElement(resource, jnlpDoc, target);
+            }
+        }
+    }
+
+    /**
+     * Append a new resources part for the given elements to the root element.
+     */
+    private Element createResources(Document jnlpDoc, Node root,
+            List<ResourceElement> section) {
+        Element resourcesElement = jnlpDoc.createElement(RESOURCES_ENTITY);
+        for (Map.Entry<String, String> qualifier : ResourcesMerge
+                .sectionAttributes(section).entrySet()) {
+            resourcesElement.setAttribute(qualifier.getKey(), qualifier.getValue());
+        }
+        root.appendChild(resourcesElement);
+        return resourcesElement;
+    }
+
+    private String sectionKey(Element resourcesElement) {
+        String[] qualifiers = ResourcesMerge.qualifiers();
+        String[] values = new String[qualifiers.length];
+        for (int i = 0; i < qualifiers.length; i++) {
+            values[i] = attribute(resourcesElement, qualifiers[i]);
+        }
+        return ResourcesMerge.sectionKey(values);
+    }
+
+    /**
+     * @return the value of the attribute, null if it is not set.
+     */
+    private String attribute(Element element, String name) {
+        return element.hasAttribute(name) ? element.getAttribute(name) : null;
+    }
+
+    private void appendElement(ResourceElement resource, Document document,
+            Element rootElement) {
+        Element currentElement = document.createElement(resource.getName());
+        for (Map.Entry<String, String> attribute : resource.getAttributes()
+                .entrySet()) {
+            currentElement.setAttribute(attribute.getKey(), attribute.getValue());
+        }
+        rootElement.appendChild(currentElement);
+    }
+}
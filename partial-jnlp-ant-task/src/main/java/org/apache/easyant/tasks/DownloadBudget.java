@@ -0,0 +1,205 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a client downloads for a jnlp file: the jars downloaded eagerly, before
+ * the application starts, and the ones downloaded lazily. As a client
+ * downloads only the jars of its platform, the eager size is the one of the
+ * platform downloading the most.
+ */
+final class DownloadBudget {
+
+    private final File jnlpFile;
+
+    private final Map<File, Jar> jars = new LinkedHashMap<File, Jar>();
+
+    DownloadBudget(File jnlpFile) {
+        this.jnlpFile = jnlpFile;
+    }
+
+    File getJnlpFile() {
+        return jnlpFile;
+    }
+
+    /**
+     * @param file
+     *            the jar downloaded.
+     * @param bytes
+     *            its size.
+     * @param eager
+     *            true if it is downloaded before the application starts.
+     * @param platform
+     *            the platform downloading it, null if every client does.
+     */
+    void add(File file, long bytes, boolean eager, String platform) {
+        if (!jars.containsKey(file)) {
+            jars.put(file, new Jar(file, bytes, eager, platform));
+        }
+    }
+
+    /**
+     * @return the size of the eager jars of every platform, and of the eager
+     *         jars of the platform having the most.
+     */
+    long getEagerBytes() {
+        long common = 0;
+        Map<String, Long> platforms = new LinkedHashMap<String, Long>();
+        for (Jar jar : jars.values()) {
+            if (!jar.isEager()) {
+                continue;
+            }
+            if (jar.getPlatform() == null) {
+                common += jar.getBytes();
+            } else {
+                Long platform = platforms.get(jar.getPlatform());
+                platforms.put(jar.getPlatform(), Long.valueOf((platform == null ? 0
+                        : platform.longValue()) + jar.getBytes()));
+            }
+        }
+        long largestPlatform = 0;
+        for (Long platform : platforms.values()) {
+            largestPlatform = Math.max(largestPlatform, platform.longValue());
+        }
+        return common + largestPlatform;
+    }
+
+    long getLazyBytes() {
+        long bytes = 0;
+        for (Jar jar : jars.values()) {
+            if (!jar.isEager()) {
+                bytes += jar.getBytes();
+            }
+        }
+        return bytes;
+    }
+
+    int getEagerCount() {
+        int count = 0;
+        for (Jar jar : jars.values()) {
+            if (jar.isEager()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int getLazyCount() {
+        return jars.size() - getEagerCount();
+    }
+
+    /**
+     * @return the given number of biggest eager jars, biggest first.
+     */
+    List<Jar> getTopContributors(int count) {
+        List<Jar> eager = new ArrayList<Jar>();
+        for (Jar jar : jars.values()) {
+            if (jar.isEager()) {
+                eager.add(jar);
+            }
+        }
+        // stable, jars of the same size keep the order of the resources
+        Collections.sort(eager, new Comparator<Jar>() {
+            public int compare(Jar jar1, Jar jar2) {
+                return jar1.getBytes() < jar2.getBytes() ? 1 : jar1
+                        .getBytes() == jar2.getBytes() ? 0 : -1;
+            }
+        });
+        return eager.subList(0, Math.min(count, eager.size()));
+    }
+
+    /**
+     * Write the budget as a JSON object.
+     * 
+     * @param top
+     *            the number of top contributors to write.
+     */
+    void write(JsonWriter json, int top) throws IOException {
+        json.beginObject();
+        json.name("jnlpFile").value(jnlpFile.getPath());
+        json.name("eagerBytes").value(getEagerBytes());
+        json.name("lazyBytes").value(getLazyBytes());
+        json.name("eagerCount").value(getEagerCount());
+        json.name("lazyCount").value(getLazyCount());
+        json.name("topContributors").beginArray();
+        for (Jar jar : getTopContributors(top)) {
+            json.beginObject();
+            json.name("file").value(jar.getFile().getPath());
+            json.name("bytes").value(jar.getBytes());
+            json.endObject();
+        }
+        json.endArray();
+        json.name("jars").beginArray();
+        for (Jar jar : jars.values()) {
+            json.beginObject();
+            json.name("file").value(jar.getFile().getPath());
+            json.name("bytes").value(jar.getBytes());
+            json.name("download").value(jar.isEager() ? "eager" : "lazy");
+            json.name("platform").value(jar.getPlatform());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    /**
+     * A jar downloaded by the clients.
+     */
+    static final class Jar {
+        private final File file;
+        private final long bytes;
+        private final boolean eager;
+        private final String platform;
+
+        Jar(File file, long bytes, boolean eager, String platform) {
+            this.file = file;
+            this.bytes = bytes;
+            this.eager = eager;
+            this.platform = platform;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        boolean isEager() {
+            return eager;
+        }
+
+        String getPlatform() {
+            return platform;
+        }
+
+        public String toString() {
+            return file.getName() + " (" + bytes + " bytes)";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes a component extension jnlp file from scratch: an information part,
+ * an optional security part, the resources and the component-desc element.
+ */
+final class ExtensionWriter {
+
+    private static final String ENCODING = "UTF-8";
+    private static final String LINE_SEPARATOR = "\n";
+    private static final String INDENT = "    ";
+
+    private ExtensionWriter() {
+    }
+
+    /**
+     * @param extension
+     *            the extension to write.
+     * @param resources
+     *            the elements of its resources parts.
+     * @return the content of the extension jnlp file.
+     */
+    static byte[] write(JNLPSet.Extension extension,
+            List<ResourceElement> resources) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XMLStreamWriter writer = XmlProviders.get().createStreamWriter(output,
+                ENCODING);
+        writer.writeStartDocument(ENCODING, "1.0");
+        writer.writeCharacters(LINE_SEPARATOR);
+        writer.writeStartElement("jnlp");
+        writer.writeAttribute("spec", "1.0+");
+        if (extension.getCodebase() != null) {
+            writer.writeAttribute("codebase", extension.getCodebase());
+        }
+        writer.writeAttribute("href", extension.getHref());
+        writer.writeCharacters(LINE_SEPARATOR + INDENT);
+        writer.writeStartElement("information");
+        writeText(writer, "title", extension.getName());
+        writeText(writer, "vendor", extension.getVendor());
+        writer.writeCharacters(LINE_SEPARATOR + INDENT);
+        writer.writeEndElement();
+        writer.writeCharacters(LINE_SEPARATOR);
+        if (extension.isAllPermissions()) {
+            writer.writeCharacters(INDENT);
+            writer.writeStartElement("security");
+            writer.writeCharacters(LINE_SEPARATOR + INDENT + INDENT);
+            writer.writeEmptyElement("all-permissions");
+            writer.writeCharacters(LINE_SEPARATOR + INDENT);
+            writer.writeEndElement();
+            writer.writeCharacters(LINE_SEPARATOR);
+        }
+        for (Map.Entry<String, List<ResourceElement>> section : ResourcesMerge
+                .sections(resources).entrySet()) {
+            if (!section.getValue().isEmpty()) {
+                StaxJNLPRewriter.writeResources(writer, section.getValue());
+            }
+        }
+        writer.writeCharacters(INDENT);
+        writer.writeEmptyElement("component-desc");
+        writer.writeCharacters(LINE_SEPARATOR);
+        writer.writeEndElement();
+        writer.writeCharacters(LINE_SEPARATOR);
+        writer.writeEndDocument();
+        writer.close();
+        return output.toByteArray();
+    }
+
+    private static void writeText(XMLStreamWriter writer, String name,
+            String text) throws Exception {
+        writer.writeCharacters(LINE_SEPARATOR + INDENT + INDENT);
+        writer.writeStartElement(name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Replaces a file by a temporary one written next to it. The temporary file
+ * has a unique name, so concurrent tasks never write to the same temporary
+ * file, and it is moved atomically over the target, so the target is never
+ * seen half written.
+ */
+final class FileReplacer {
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private FileReplacer() {
+    }
+
+    /**
+     * @return a new empty file, in the same directory as the given target.
+     */
+    static File createTempFile(File target) throws IOException {
+        File absoluteTarget = target.getAbsoluteFile();
+        // the prefix of a temporary file must be at least 3 characters long
+        return File.createTempFile(absoluteTarget.getName() + "-", TMP_SUFFIX,
+                absoluteTarget.getParentFile());
+    }
+
+    /**
+     * Replace the target by the source, the source being deleted.
+     */
+    static void replace(File source, File target) throws IOException {
+        if (target.exists()) {
+            keepPermissions(target, source);
+        }
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            transfer(source, target);
+            FileUtils.delete(source);
+        }
+    }
+
+    /**
+     * Temporary files get the default permissions of the process, give them
+     * the ones of the file they replace, such as its execute or group write
+     * permissions.
+     */
+    private static void keepPermissions(File from, File to) throws IOException {
+        try {
+            Files.setPosixFilePermissions(to.toPath(), Files
+                    .getPosixFilePermissions(from.toPath()));
+        } catch (UnsupportedOperationException e) {
+            // not a posix file system, nothing to keep
+        }
+    }
+
+    private static void transfer(File source, File target) throws IOException {
+        FileInputStream input = new FileInputStream(source);
+        try {
+            FileOutputStream output = new FileOutputStream(target);
+            try {
+                FileChannel in = input.getChannel();
+                FileChannel out = output.getChannel();
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            } finally {
+                FileUtils.close(output);
+            }
+        } finally {
+            FileUtils.close(input);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * A scanner of a fileset keeping the included files of each directory, so
+ * that a single directory can be scanned again when it changes, instead of
+ * the whole tree. The patterns and selectors of the fileset are evaluated the
+ * same way as by a full scan, and the files are sorted the same way too.
+ */
+final class IncrementalScanner extends DirectoryScanner {
+
+    private final File root;
+
+    /**
+     * The included files of each scanned directory, indexed by the absolute
+     * path of the directory.
+     */
+    private final Map<String, List<File>> directories = new HashMap<String, List<File>>();
+
+    IncrementalScanner(FileSet fileset, Project project) {
+        fileset.setupDirectoryScanner(this, project);
+        // as done by a full scan
+        if (includes == null) {
+            includes = new String[] {"**"};
+        }
+        if (excludes == null) {
+            excludes = new String[0];
+        }
+        this.root = getBasedir().getAbsoluteFile();
+    }
+
+    File getRoot() {
+        return root;
+    }
+
+    /**
+     * Scan a directory and all its sub directories which could hold included
+     * files.
+     * 
+     * @return the scanned directories.
+     */
+    List<File> scanTree(File dir) {
+        List<File> scanned = new ArrayList<File>();
+        scanTree(dir.getAbsoluteFile(), scanned);
+        return scanned;
+    }
+
+    private void scanTree(File dir, List<File> scanned) {
+        rescan(dir);
+        scanned.add(dir);
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory() && couldHoldIncluded(relativeName(child))) {
+                scanTree(child, scanned);
+            }
+        }
+    }
+
+    /**
+     * Scan again the files of a directory, not its sub directories.
+     */
+    void rescan(File dir) {
+        File absoluteDir = dir.getAbsoluteFile();
+        List<File> included = new ArrayList<File>();
+        File[] children = absoluteDir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isFile() && isIncludedFile(child)) {
+                    included.add(child);
+                }
+            }
+        }
+        directories.put(absoluteDir.getPath(), included);
+    }
+
+    /**
+     * Forget a deleted directory and its sub directories.
+     */
+    void remove(File dir) {
+        String path = dir.getAbsolutePath();
+        for (Iterator<String> it = directories.keySet().iterator(); it.hasNext();) {
+            String scanned = it.next();
+            if (scanned.equals(path) || scanned.startsWith(path + File.separator)) {
+                it.remove();
+            }
+        }
+    }
+
+    boolean isScanned(File dir) {
+        return directories.containsKey(dir.getAbsolutePath());
+    }
+
+    /**
+     * @return true if the file was included by the last scan of its
+     *         directory.
+     */
+    boolean isScannedFile(File file) {
+        List<File> included = directories.get(file.getAbsoluteFile().getParent());
+        return included != null && included.contains(file.getAbsoluteFile());
+    }
+
+    /**
+     * @return true if the file is under the root directory.
+     */
+    boolean contains(File file) {
+        return file.getAbsolutePath().startsWith(root.getPath() + File.separator);
+    }
+
+    /**
+     * @return true if the given directory could hold included files.
+     */
+    boolean couldHoldIncluded(File dir) {
+        return contains(dir) && couldHoldIncluded(relativeName(dir));
+    }
+
+    /**
+     * @return true if the file, under the root directory, is included by the
+     *         fileset.
+     */
+    boolean isIncludedFile(File file) {
+        if (!contains(file)) {
+            return false;
+        }
+        String name = relativeName(file);
+        return isIncluded(name) && !isExcluded(name) && isSelected(name, file);
+    }
+
+    /**
+     * @return the included files, sorted by relative path as by
+     *         {@link ResourceIndex#scanFiles}.
+     */
+    List<File> getFiles() {
+        Map<String, File> files = new TreeMap<String, File>();
+        for (List<File> included : directories.values()) {
+            for (File file : included) {
+                files.put(relativeName(file), file);
+            }
+        }
+        return new ArrayList<File>(files.values());
+    }
+
+    private String relativeName(File file) {
+        String path = file.getAbsolutePath();
+        if (path.equals(root.getPath())) {
+            return "";
+        }
+        return path.substring(root.getPath().length() + 1);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Rewrites the resources part of an existing jnlp file.
+ */
+interface JNLPRewriter {
+
+    /**
+     * Copy the given jnlp file to the output, replacing its resources parts by
+     * one part per set of qualifiers of the given elements: a part without
+     * attribute for the elements of every client, and a
+     * <code>&lt;resources os="..." arch="..."&gt;</code> part for each
+     * platform of the native libraries (or locale). In merge mode, the
+     * existing parts are kept and only the elements they lack are added, to
+     * the first part having the same qualifiers, or to a new part.
+     * 
+     * @param jnlpFile
+     *            the jnlp file to read.
+     * @param output
+     *            where to write the rewritten jnlp file.
+     * @param resources
+     *            the elements of the new resources parts.
+     */
+    void rewrite(File jnlpFile, OutputStream output,
+            List<ResourceElement> resources) throws Exception;
+}
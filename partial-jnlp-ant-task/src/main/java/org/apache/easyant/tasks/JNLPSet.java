@@ -0,0 +1,231 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * A set of jnlp files to modify with the same resources, each one having its
+ * own main jar, and possibly resources of its own.
+ * 
+ * <pre>
+ * &lt;jnlpset&gt;
+ *     &lt;extension file="framework.jnlp" name="framework"/&gt;
+ *     &lt;descriptor file="client.jnlp" mainjar="client.jar"/&gt;
+ *     &lt;descriptor file="admin.jnlp" mainjar="admin.jar"&gt;
+ *         &lt;fileset dir="admin-lib" includes="*.jar"/&gt;
+ *     &lt;/descriptor&gt;
+ * &lt;/jnlpset&gt;
+ * </pre>
+ * 
+ * With an extension, the resources common to all the jnlp files of the set are
+ * written into the extension jnlp file instead, and each jnlp file references
+ * it, so the clients download and cache them once for all the applications.
+ */
+public class JNLPSet {
+
+    private List<Descriptor> descriptors = new ArrayList<Descriptor>();
+
+    private Extension extension = null;
+
+    public Descriptor createDescriptor() {
+        Descriptor descriptor = new Descriptor();
+        this.descriptors.add(descriptor);
+        return descriptor;
+    }
+
+    public List<Descriptor> getDescriptors() {
+        return descriptors;
+    }
+
+    /**
+     * Create the extension jnlp file holding the resources common to the
+     * jnlp files of the set.
+     */
+    public Extension createExtension() {
+        if (extension != null) {
+            throw new BuildException("a jnlpset can have only one extension");
+        }
+        extension = new Extension();
+        return extension;
+    }
+
+    public Extension getExtension() {
+        return extension;
+    }
+
+    /**
+     * A jnlp file to modify, its main jar and the resources needed by this
+     * jnlp file only.
+     */
+    public static class Descriptor {
+        private File file;
+        private File mainJar;
+        private List<FileSet> filesets = new ArrayList<FileSet>();
+        private List<JNLPTemplate.Property> properties = new ArrayList<JNLPTemplate.Property>();
+
+        public Descriptor() {
+        }
+
+        public Descriptor(File file, File mainJar) {
+            this.file = file;
+            this.mainJar = mainJar;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Set the jnlp file to modify.
+         */
+        public void setFile(File file) {
+            this.file = file;
+        }
+
+        public File getMainJar() {
+            return mainJar;
+        }
+
+        /**
+         * Set the main jar file (that contain the main class to load).
+         */
+        public void setMainJar(File mainJar) {
+            this.mainJar = mainJar;
+        }
+
+        public List<FileSet> getFilesets() {
+            return filesets;
+        }
+
+        /**
+         * Add resources needed by this jnlp file only, on top of the ones of
+         * the task. They are neither deduplicated nor bundled.
+         */
+        public void addConfiguredFileset(FileSet fileset) {
+            filesets.add(fileset);
+        }
+
+        public List<JNLPTemplate.Property> getProperties() {
+            return properties;
+        }
+
+        /**
+         * Add a system property set by this jnlp file only, when it is
+         * generated from a template.
+         */
+        public JNLPTemplate.Property createProperty() {
+            JNLPTemplate.Property property = new JNLPTemplate.Property();
+            properties.add(property);
+            return property;
+        }
+    }
+
+    /**
+     * A component extension jnlp file, generated from scratch with the
+     * resources common to the jnlp files of a set.
+     */
+    public static class Extension {
+        private File file;
+        private String name;
+        private String href;
+        private String codebase;
+        private String vendor;
+        private boolean allPermissions = false;
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Set the extension jnlp file to write.
+         */
+        public void setFile(File file) {
+            this.file = file;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Set the name of the extension, also used as its title.
+         */
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the href the jnlp files reference the extension with, the
+         *         name of the extension file by default.
+         */
+        public String getHref() {
+            return href != null ? href : file.getName();
+        }
+
+        /**
+         * Set the href the jnlp files reference the extension with, relative
+         * to their codebase. Defaults to the name of the extension file.
+         */
+        public void setHref(String href) {
+            this.href = href;
+        }
+
+        public String getCodebase() {
+            return codebase;
+        }
+
+        /**
+         * Set the codebase of the extension jnlp file. Not set by default.
+         */
+        public void setCodebase(String codebase) {
+            this.codebase = codebase;
+        }
+
+        /**
+         * @return the vendor of the extension, its name by default.
+         */
+        public String getVendor() {
+            return vendor != null ? vendor : name;
+        }
+
+        /**
+         * Set the vendor of the extension. Defaults to its name.
+         */
+        public void setVendor(String vendor) {
+            this.vendor = vendor;
+        }
+
+        public boolean isAllPermissions() {
+            return allPermissions;
+        }
+
+        /**
+         * Request all the permissions for the jars of the extension, needed
+         * when the applications request them. Defaults to false.
+         */
+        public void setAllPermissions(boolean allPermissions) {
+            this.allPermissions = allPermissions;
+        }
+    }
+}
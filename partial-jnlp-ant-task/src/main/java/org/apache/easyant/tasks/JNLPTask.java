@@ -17,32 +17,51 @@
  */
 package org.apache.easyant.tasks;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.easyant.tasks.JNLPSet.Descriptor;
+import org.apache.easyant.tasks.JNLPSet.Extension;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.util.FileUtils;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.bootstrap.DOMImplementationRegistry;
-import org.w3c.dom.ls.DOMImplementationLS;
-import org.w3c.dom.ls.LSOutput;
-import org.w3c.dom.ls.LSParser;
-import org.w3c.dom.ls.LSSerializer;
 
 /**
  * <p>
  * This task is used to modify existing jnlp file.
  * It modifies only the resources part of the file and nothing else. 
  * (useful to make the dependencies inside).
- * If a resources part already exists the program add just new jar entries, don't remove them.  
+ * By default the existing resources parts are replaced by a new one.
+ * In merge mode (<code>merge="true"</code>) they are kept as they are, and the program add
+ * just new jar entries to the first one applying to every os, arch and locale, don't remove them.  
  * </p>
  * <p>
  * There are three ways for resolving path with this task:
@@ -68,7 +87,87 @@ import org.w3c.dom.ls.LSSerializer;
  *  <br/>
  *  <b>The relative path resolution</b> generates path in relative corresponding to the fileset paths.<br/>
  * </p>
- * 
+ * <p>
+ *  By default the jnlp file is loaded in a DOM tree and serialized back with pretty printing.
+ *  With <code>streaming="true"</code> it is rewritten in a single streaming pass instead,
+ *  which keeps memory usage flat for big jnlp files.
+ * </p>
+ * <p>
+ *  With <code>incremental="true"</code> the jnlp file is left untouched when neither
+ *  the resources nor the task settings changed since the last execution.
+ * </p>
+ * <p>
+ *  Several jnlp files sharing the same resources can be modified at once with nested
+ *  <code>&lt;jnlpset&gt;</code> elements: the resources are scanned once and the jnlp
+ *  files are modified in parallel. The filesets are scanned concurrently too, on virtual
+ *  threads when the JVM has them.
+ * </p>
+ * <p>
+ *  The descriptors of a <code>&lt;jnlpset&gt;</code> can have nested filesets of their own, and
+ *  with a nested <code>&lt;extension&gt;</code> the resources common to all its jnlp files are
+ *  written into a shared extension jnlp file, referenced by each of them, so the clients
+ *  download and cache these resources once for all the applications.
+ * </p>
+ * <p>
+ *  Every jar is downloaded eagerly, unless a class loading trace of the application startup
+ *  is given with <code>startupTrace</code>: then the jars not used at startup are downloaded
+ *  lazily, each one in its own part.
+ * </p>
+ * <p>
+ *  The jars of nested <code>&lt;platformfileset&gt;</code> elements are written in their own
+ *  resources parts, restricted to the <code>os</code> and <code>arch</code> of the fileset, so
+ *  each client downloads only the native libraries of its platform.
+ * </p>
+ * <p>
+ *  With <code>jarIndex="true"</code> a jar index of the main jar and of the resources is written
+ *  into the main jar, so the client doesn't probe every jar to find a class.
+ * </p>
+ * <p>
+ *  With <code>verify="true"</code> the signatures and the Permissions and Codebase manifest
+ *  attributes of every jar are checked in parallel before anything is modified, the results
+ *  being cached by content digest in <code>verifyCache</code>.
+ * </p>
+ * <p>
+ *  With <code>bundleThreshold</code> the unsigned jars smaller than the threshold are merged
+ *  into bundle jars written in <code>bundleDir</code>, which replace them in the resources.
+ * </p>
+ * <p>
+ *  With <code>versions="true"</code> every jar entry gets a version derived from its digest, and
+ *  with <code>versionDir</code> the versioned jars are published in this directory, along with
+ *  the JarDiffs from the jars of the <code>previousRelease</code> if any, for servers
+ *  implementing the version-based download protocol.
+ * </p>
+ * <p>
+ *  With <code>contentAddressedDir</code> the jars are published in this directory under names
+ *  holding their digest, and referenced by these names, so unchanged jars keep the same url.
+ * </p>
+ * <p>
+ *  With <code>watch="true"</code> the task keeps running and modifies the jnlp files again
+ *  after each burst of changes of the resources, scanning again only the changed directories.
+ * </p>
+ * <p>
+ *  The sizes of the eager and lazy downloads of each jnlp file, and their biggest eager jars,
+ *  can be published as properties prefixed by <code>budgetProperty</code> and written as a
+ *  JSON report in <code>budgetReport</code>, and the build fails when the eager download of
+ *  a jnlp file exceeds <code>maxEagerBytes</code>.
+ * </p>
+ * <p>
+ *  The time spent in each phase of the execution (fileset scan, DOM parsing, serialization,
+ *  file replacement...), the number of resources and the bytes written can be published as
+ *  properties prefixed by <code>metricsProperty</code> and written as JSON in
+ *  <code>metricsFile</code>.
+ * </p>
+ * <p>
+ *  With a nested <code>&lt;template&gt;</code> the jnlp files are generated from scratch in a
+ *  single streaming pass instead of being modified, so they don't have to exist. The parts
+ *  shared by every jnlp file are rendered once, and the descriptors of a
+ *  <code>&lt;jnlpset&gt;</code> can add their own <code>&lt;property&gt;</code> elements.
+ * </p>
+ * <p>
+ *  With <code>manifestClassPath="true"</code> the jars reachable from the main jar through the
+ *  Class-Path attribute of the manifests are added to the resources, and the filesets are optional.
+ * </p>
+ *
  * @version 1.0
  * 
  */
@@ -77,254 +176,1799 @@ public class JNLPTask extends Task {
     private Vector<FileSet> filesets = new Vector<FileSet>();
 
     private static final String JAR_ENTITY = "jar";
-    private static final String RESOURCES_ENTITY = "resources";
-    private static final String DOM_IMPLEMENTATION = "LS";
-    private static final String PRETTY_PRINT_FORMAT = "format-pretty-print";
     private static final String HREF_ATTRIBUTE = "href";
     private static final String DOWNLOAD_ATTRIBUTE = "download";
     private static final String MAIN_ATTRIBUTE = "main";
+    private static final String SIZE_ATTRIBUTE = "size";
+    private static final String VERSION_ATTRIBUTE = "version";
+    private static final String PART_ATTRIBUTE = "part";
+    private static final String PACKAGE_ENTITY = "package";
+    private static final String NAME_ATTRIBUTE = "name";
+    private static final String NATIVELIB_ENTITY = "nativelib";
+    private static final String OS_ATTRIBUTE = "os";
+    private static final String ARCH_ATTRIBUTE = "arch";
+    private static final String EXTENSION_ENTITY = "extension";
+    private static final long DEFAULT_BUNDLE_MAX_SIZE = 1024 * 1024;
+    private static final long DEFAULT_WATCH_DELAY = 500;
+    private static final int DEFAULT_BUDGET_TOP = 10;
 
     private String mainjar = null;
     private String jnlpFile = null;
     private String flatPath = null;
-    private final String tmpFile = "tmp.xml";
     private PathType pathType = PathType.AUTOMATIC;
+    private boolean streaming = false;
+    private ResourceIndex resourceIndex = null;
+    private Map<Descriptor, ResourceIndex> descriptorIndexes = null;
+    private boolean incremental = false;
+    private File fingerprintFile = null;
+    private boolean fingerprintContent = false;
+    private List<JNLPSet> jnlpSets = new ArrayList<JNLPSet>();
+    private int threads = Workers.defaultThreads();
+    private List<Descriptor> descriptors = null;
+    private boolean sizes = false;
+    private String digestAlgorithm = null;
+    private String digestAttribute = null;
+    private File digestCache = null;
+    private ResourceDigester digester = null;
+    private Map<File, String> digests = null;
+    private File startupTrace = null;
+    private StartupClassification classification = null;
+    private boolean versions = false;
+    private File previousRelease = null;
+    private File versionDir = null;
+    private String precompress = null;
+    private File precompressDir = null;
+    private boolean deduplicate = false;
+    private boolean merge = false;
+    private boolean jarIndex = false;
+    private boolean verify = false;
+    private File verifyCache = null;
+    private long bundleThreshold = 0;
+    private long bundleMaxSize = DEFAULT_BUNDLE_MAX_SIZE;
+    private File bundleDir = null;
+    private File contentAddressedDir = null;
+    private boolean contentAddressedLink = false;
+    private Map<File, String> publishedNames = null;
+    private boolean watch = false;
+    private long watchDelay = DEFAULT_WATCH_DELAY;
+    private long watchTimeout = 0;
+    private ResourceWatcher watcher = null;
+    private boolean manifestClassPath = false;
+    private ClassPathResolver classPathResolver = null;
+    private Set<File> classPathJars = Collections.emptySet();
+    private String budgetProperty = null;
+    private File budgetReport = null;
+    private long maxEagerBytes = 0;
+    private int budgetTop = DEFAULT_BUDGET_TOP;
+    private ConcurrentMap<File, Long> lengths = null;
+    private String metricsProperty = null;
+    private File metricsFile = null;
+    private TaskMetrics metrics = new TaskMetrics(false);
+    private JNLPTemplate template = null;
+    private List<ResourceCompressor.Codec> codecs = null;
 
 
 
     @Override
     public synchronized void execute() throws BuildException {
-        validate();
-        log("JNLP modification...");
+        // the Class-Path of the jars are cached for this execution only
+        classPathResolver = new ClassPathResolver(threads);
+        try {
+            generate();
+            if (watch) {
+                watch();
+            }
+        } finally {
+            classPathResolver = null;
+        }
+    }
+
+    /**
+     * Regenerate the jnlp files whenever a resource or a main jar changes,
+     * until the watch timeout elapses without change, or forever.
+     */
+    private void watch() throws BuildException {
+        Set<File> mainJars = new LinkedHashSet<File>();
+        for (Descriptor descriptor : descriptors) {
+            mainJars.add(descriptor.getMainJar());
+        }
         try {
-            DOMImplementationRegistry domRegistry = DOMImplementationRegistry
-                    .newInstance();
-            DOMImplementationLS domImpl = (DOMImplementationLS) domRegistry
-                    .getDOMImplementation(DOM_IMPLEMENTATION);
-
-            LSParser jnlpBuilder = domImpl.createLSParser(
-                    DOMImplementationLS.MODE_SYNCHRONOUS, null);
-            Document jnlpDoc = jnlpBuilder.parseURI(jnlpFile);
-
-            Node root = null;
-            for (int i = 0; i < jnlpDoc.getChildNodes().getLength(); i++) {
-                if (jnlpDoc.getChildNodes().item(i).getNodeType() == Node.ELEMENT_NODE) {
-                    root = jnlpDoc.getChildNodes().item(i);
-                    break;
+            watcher = new ResourceWatcher(getAllFilesets(), mainJars, getProject());
+            watcher.watch(classPathJars);
+            log("watching the resources for changes...");
+            while (watcher.awaitChanges(watchDelay, watchTimeout)) {
+                try {
+                    generate();
+                } catch (BuildException e) {
+                    // keep watching, the next change may fix it
+                    log(e.getMessage(), Project.MSG_ERR);
                 }
+                // the Class-Path may reach other jars now
+                watcher.watch(classPathJars);
             }
-            NodeList nodeList = root.getChildNodes();
+            log("no change for " + watchTimeout + " ms, watch stopped");
+        } catch (IOException e) {
+            throw new BuildException("unable to watch the resources: "
+                    + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException e) {
+                    // nothing more to watch
+                }
+                watcher = null;
+            }
+        }
+    }
+
+    private void generate() throws BuildException {
+        digester = null;
+        lengths = new ConcurrentHashMap<File, Long>();
+        metrics = new TaskMetrics(metricsProperty != null || metricsFile != null);
+        long total = metrics.start();
+        validate();
+        long start = metrics.start();
+        deduplicateResources();
+        start = metrics.stop("deduplicate", start);
+        bundleResources();
+        start = metrics.stop("bundle", start);
+        writeJarIndexes();
+        start = metrics.stop("jarIndex", start);
+        computeDigests();
+        start = metrics.stop("digest", start);
+        generateJarDiffs();
+        start = metrics.stop("jarDiff", start);
+        storeDigests();
+        start = metrics.stop("storeDigests", start);
+        publishResources();
+        start = metrics.stop("publish", start);
+        precompressResources();
+        start = metrics.stop("precompress", start);
+        classifyDownloads();
+        start = metrics.stop("classify", start);
+        Map<Extension, byte[]> extensions = new LinkedHashMap<Extension, byte[]>();
+        final Map<Descriptor, List<ResourceElement>> resources = buildResources(extensions);
+        start = metrics.stop("resources", start);
+        checkBudget();
+        metrics.stop("budget", start);
+        List<Callable<Void>> rewrites = new ArrayList<Callable<Void>>();
+        for (final Map.Entry<Extension, byte[]> extension : extensions.entrySet()) {
+            rewrites.add(new Callable<Void>() {
+                public Void call() {
+                    writeExtension(extension.getKey(), extension.getValue());
+                    return null;
+                }
+            });
+        }
+        for (final Descriptor descriptor : descriptors) {
+            rewrites.add(new Callable<Void>() {
+                public Void call() {
+                    rewrite(descriptor, resources.get(descriptor));
+                    return null;
+                }
+            });
+        }
+        Workers.invokeAll(rewrites, threads);
+        metrics.stop("total", total);
+        publishMetrics();
+    }
 
-            if (nodeList.getLength() > 0) {
-                for (int i = 0; i < nodeList.getLength(); i++) {
-                    if (RESOURCES_ENTITY.equals(nodeList.item(i).getNodeName())) {
-                        root.removeChild(nodeList.item(i));
+    /**
+     * Publish the metrics of this execution, if requested.
+     */
+    private void publishMetrics() throws BuildException {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        if (metricsProperty != null) {
+            for (Map.Entry<String, Long> phase : metrics.getPhases().entrySet()) {
+                getProject().setNewProperty(metricsProperty + ".time." + phase.getKey(),
+                        String.valueOf(phase.getValue()));
+            }
+            for (Map.Entry<String, Long> counter : metrics.getCounters().entrySet()) {
+                getProject().setNewProperty(metricsProperty + "." + counter.getKey(),
+                        String.valueOf(counter.getValue()));
+            }
+        }
+        if (metricsFile != null) {
+            try {
+                writeJson(metricsFile, new JsonContent() {
+                    public void write(JsonWriter json) throws IOException {
+                        metrics.write(json);
                     }
+                });
+            } catch (IOException e) {
+                throw new BuildException("unable to write the metrics file "
+                        + metricsFile + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Write a JSON file through a temporary file, so that readers never see
+     * it half written.
+     */
+    private void writeJson(File target, JsonContent content) throws IOException {
+        File tmpFile = FileReplacer.createTempFile(target);
+        try {
+            Writer writer = new OutputStreamWriter(new BufferedOutputStream(
+                    new FileOutputStream(tmpFile)), "UTF-8");
+            try {
+                JsonWriter json = new JsonWriter(writer);
+                content.write(json);
+                json.flush();
+            } finally {
+                FileUtils.close(writer);
+            }
+            FileReplacer.replace(tmpFile, target);
+        } finally {
+            FileUtils.delete(tmpFile);
+        }
+    }
+
+    /**
+     * The content of a JSON file.
+     */
+    private interface JsonContent {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private void rewrite(Descriptor descriptor, List<ResourceElement> resources)
+            throws BuildException {
+        File target = descriptor.getFile();
+        try {
+            long start = metrics.start();
+            ResourceFingerprint fingerprint = null;
+            if (incremental) {
+                fingerprint = computeFingerprint(descriptor, resources);
+                boolean upToDate = fingerprint.isUpToDate(
+                        getFingerprintFile(target), target);
+                start = metrics.stop("fingerprint", start);
+                if (upToDate) {
+                    metrics.count("jnlpFilesUpToDate", 1);
+                    log("JNLP " + target + " is up to date");
+                    return;
                 }
             }
-            Element resourcesElement = jnlpDoc.createElement(RESOURCES_ENTITY);
-            root.appendChild(resourcesElement);
+            log("JNLP modification...");
+            List<ResourceElement> allResources = new ArrayList<ResourceElement>(
+                    resources.size() + 1);
+            allResources.add(createElement(descriptor.getMainJar(), true));
+            allResources.addAll(resources);
 
-            appendAllResources(jnlpDoc, resourcesElement);
-            LSOutput lsOutput = domImpl.createLSOutput();
-            lsOutput.setByteStream(new FileOutputStream(new File(tmpFile)));
-            LSSerializer serializer = domImpl.createLSSerializer();
-            serializer.getDomConfig().setParameter(PRETTY_PRINT_FORMAT, true);
-            serializer.write(jnlpDoc, lsOutput);
-            replaceFile(new File(tmpFile), new File(jnlpFile));
+            if (template != null) {
+                // a generated jnlp file may go into a new directory
+                File parent = target.getAbsoluteFile().getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs()
+                        && !parent.isDirectory()) {
+                    throw new IOException("unable to create " + parent);
+                }
+            }
+            File tmpFile = FileReplacer.createTempFile(target);
+            try {
+                OutputStream output = new BufferedOutputStream(
+                        new FileOutputStream(tmpFile));
+                try {
+                    if (template != null) {
+                        template.write(output, target.getName(), allResources,
+                                descriptor.getProperties());
+                        start = metrics.stop("generate", start);
+                    } else if (streaming) {
+                        new StaxJNLPRewriter(merge).rewrite(target, output,
+                                allResources);
+                    } else {
+                        // parsing and serialization are measured apart
+                        DomJNLPRewriter rewriter = new DomJNLPRewriter(merge);
+                        Document document = rewriter.build(target, allResources);
+                        start = metrics.stop("parse", start);
+                        rewriter.serialize(document, output);
+                    }
+                } finally {
+                    FileUtils.close(output);
+                }
+                if (template == null) {
+                    start = metrics.stop(streaming ? "rewrite" : "serialize", start);
+                }
+                if (metrics.isEnabled()) {
+                    metrics.count("bytesWritten", tmpFile.length());
+                }
+                FileReplacer.replace(tmpFile, target);
+                start = metrics.stop("replace", start);
+            } finally {
+                // the temporary file is left over only on failure
+                FileUtils.delete(tmpFile);
+            }
+            if (fingerprint != null) {
+                fingerprint.store(getFingerprintFile(target), target);
+                metrics.stop("fingerprint", start);
+            }
+            metrics.count("jnlpFilesWritten", 1);
             log("JNLP modification done !");
+        } catch (BuildException e) {
+            throw e;
         } catch (IOException e) {
-            throw new BuildException(e.getMessage());
+            throw new BuildException(e.getMessage(), e);
         } catch (ClassCastException e) {
-            throw new BuildException(e.getMessage());
+            throw new BuildException(e.getMessage(), e);
         } catch (ClassNotFoundException e) {
-            throw new BuildException(e.getMessage());
+            throw new BuildException(e.getMessage(), e);
         } catch (InstantiationException e) {
-            throw new BuildException(e.getMessage());
+            throw new BuildException(e.getMessage(), e);
         } catch (IllegalAccessException e) {
-            throw new BuildException(e.getMessage());
+            throw new BuildException(e.getMessage(), e);
         } catch (DOMException e) {
-            throw new BuildException(e.getMessage());
+            throw new BuildException(e.getMessage(), e);
+        } catch (XMLStreamException e) {
+            throw new BuildException(e.getMessage(), e);
         } catch (Exception e) {
-            throw new BuildException(e.getMessage());
+            throw new BuildException(e.getMessage(), e);
         }
 
     }
 
     private void validate() throws BuildException {
 
-        // less one resources has to be setted.
-        if (null == this.filesets || this.filesets.isEmpty()) {
+        // less one resources has to be setted, unless they are found from the
+        // main jar or given by the descriptors.
+        boolean descriptorResources = false;
+        for (JNLPSet jnlpSet : jnlpSets) {
+            for (Descriptor descriptor : jnlpSet.getDescriptors()) {
+                descriptorResources |= !descriptor.getFilesets().isEmpty();
+            }
+        }
+        if (!manifestClassPath && !descriptorResources
+                && (null == this.filesets || this.filesets.isEmpty())) {
             throw new BuildException("the parameter filesets can not be empty");
         }
 
-        // mainjar can't be empty or null
-        if (null == mainjar || "".equals(mainjar)) {
-            throw new BuildException("the parameter mainjar have to be setted");
-        }
+        descriptors = new ArrayList<Descriptor>();
+        if (null != jnlpFile || jnlpSets.isEmpty()) {
+            // mainjar can't be empty or null
+            if (null == mainjar || "".equals(mainjar)) {
+                throw new BuildException("the parameter mainjar have to be setted");
+            }
 
-        // jnlp can't null or not exist
-        if (null == jnlpFile) {
-            throw new BuildException("the parameter jnlpFile have to be setted");
-        }
+            // jnlp can't null or not exist
+            if (null == jnlpFile) {
+                throw new BuildException("the parameter jnlpFile have to be setted");
+            }
 
-        if (!(new File(jnlpFile).exists())) {
-            throw new BuildException("the jnlpFile " + jnlpFile
-                    + " doesn't exist");
+            if (template == null && !(new File(jnlpFile).exists())) {
+                throw new BuildException("the jnlpFile " + jnlpFile
+                        + " doesn't exist");
+            }
+
+            if (!new File(mainjar).exists()) {
+                throw new BuildException("the mainJar does not exists");
+            }
+            descriptors.add(new Descriptor(new File(jnlpFile), new File(mainjar)));
+        }
+        for (JNLPSet jnlpSet : jnlpSets) {
+            for (Descriptor descriptor : jnlpSet.getDescriptors()) {
+                if (null == descriptor.getFile()) {
+                    throw new BuildException("the file of a jnlpset descriptor have to be setted");
+                }
+                if (template == null && !descriptor.getFile().exists()) {
+                    throw new BuildException("the jnlpFile " + descriptor.getFile()
+                            + " doesn't exist");
+                }
+                if (null == descriptor.getMainJar()) {
+                    throw new BuildException("the mainjar of the jnlpset descriptor "
+                            + descriptor.getFile() + " have to be setted");
+                }
+                if (!descriptor.getMainJar().exists()) {
+                    throw new BuildException("the mainJar " + descriptor.getMainJar()
+                            + " does not exists");
+                }
+                if (template == null && !descriptor.getProperties().isEmpty()) {
+                    throw new BuildException("the properties of the jnlpset descriptor "
+                            + descriptor.getFile() + " need a template");
+                }
+                for (JNLPTemplate.Property property : descriptor.getProperties()) {
+                    property.validate();
+                }
+                descriptors.add(descriptor);
+            }
+            Extension extension = jnlpSet.getExtension();
+            if (extension != null) {
+                if (null == extension.getFile() || null == extension.getName()) {
+                    throw new BuildException("the file and the name of a jnlpset extension have to be setted");
+                }
+                if (jnlpSet.getDescriptors().size() < 2) {
+                    throw new BuildException("the extension " + extension.getFile()
+                            + " needs a jnlpset of several descriptors");
+                }
+            }
         }
 
-        if (flatPath != null) {
-            pathType = PathType.FLAT;
-        } else {
-            pathType = PathType.AUTOMATIC;
+        if (template != null) {
+            template.validate();
+            if (merge) {
+                throw new BuildException("the parameter merge can't be used with a template");
+            }
         }
-        
-        // check if the main jar parameter is included in the resources and if
-        // the resources exists.
-        for (FileSet currentResource : filesets) {
 
-            for (File currentFile : currentResource.getDir().listFiles()) {
+        if (fingerprintFile != null && descriptors.size() > 1) {
+            throw new BuildException("the parameter fingerprintFile can't be used with several jnlp files");
+        }
 
-                if (checkDirectories(currentResource, currentFile)) {
-                    if (!currentFile.exists()) {
-                        throw new BuildException("the resource: "
-                                + currentFile.getAbsolutePath()
-                                + " doesnot exists !");
-                    }
+        if (versionDir != null && !versions) {
+            throw new BuildException("the parameter versionDir needs versions to be enabled");
+        }
 
-                }
+        if (previousRelease != null) {
+            if (versionDir == null) {
+                throw new BuildException("the parameter previousRelease needs a versionDir to write the JarDiffs in");
+            }
+            if (!previousRelease.isDirectory()) {
+                throw new BuildException("the previousRelease " + previousRelease
+                        + " is not a directory");
             }
         }
-        if (!new File(mainjar).exists()) {
-            throw new BuildException("the mainJar does not exists");
+
+        codecs = precompress == null ? null : ResourceCompressor
+                .parseCodecs(precompress);
+        if (codecs != null && !codecs.isEmpty() && precompressDir == null) {
+            throw new BuildException("the parameter precompressDir is needed to precompress the jars");
         }
 
-    }
+        if (bundleThreshold > 0) {
+            if (bundleDir == null) {
+                throw new BuildException("the parameter bundleDir is needed to bundle small jars");
+            }
+            if (bundleMaxSize <= bundleThreshold) {
+                throw new BuildException("the parameter bundleMaxSize has to be greater than bundleThreshold");
+            }
+        }
 
-    private void replaceFile(File src, File dest) throws IOException {
-        FileUtils.delete(dest);
-        FileUtils.getFileUtils().copyFile(src, dest);
-    }
+        if (startupTrace != null && !startupTrace.isFile()) {
+            throw new BuildException("the startupTrace " + startupTrace
+                    + " doesn't exist");
+        }
 
-    
-    private void appendElement(File currentFile, Document document,
-            Element rootElement, boolean main) throws DOMException, Exception {
-        Element currentElement = document.createElement(JAR_ENTITY);
+        if (digestAlgorithm != null) {
+            // fail early on an unknown algorithm
+            Digests.newDigest(digestAlgorithm);
+        }
 
-        currentElement.setAttribute(HREF_ATTRIBUTE, computePath(currentFile,
-                pathType));
-         // TODO: the download attribute should be parameterizable => lazy or eager, from the moment it's only "eager".
-        currentElement.setAttribute(DOWNLOAD_ATTRIBUTE, "eager");
+        if (contentAddressedDir != null && jarIndex) {
+            // the index of the main jar would have to hold its own digest
+            throw new BuildException("the parameter jarIndex can't be used with contentAddressedDir");
+        }
 
-        if (main) {
-            currentElement.setAttribute(MAIN_ATTRIBUTE, "true");
+        if (contentAddressedDir != null) {
+            pathType = PathType.CONTENT_ADDRESSED;
+        } else if (flatPath != null) {
+            pathType = PathType.FLAT;
         } else {
-            currentElement.setAttribute(MAIN_ATTRIBUTE, "false");
+            pathType = PathType.AUTOMATIC;
+        }
+        
+        // scan the resources once, and check that they exist. When watching,
+        // only the directories which changed have been scanned again.
+        long start = metrics.start();
+        // all the filesets, the ones of the descriptors included, are
+        // scanned at once, or kept up to date by the watcher.
+        List<List<File>> scannedFiles = watcher != null ? watcher.getFiles()
+                : ResourceIndex.scanFiles(getAllFilesets(), getProject(), threads);
+        resourceIndex = ResourceIndex.create(filesets, scannedFiles.subList(0,
+                filesets.size()));
+        int scannedCount = filesets.size();
+        descriptorIndexes = new LinkedHashMap<Descriptor, ResourceIndex>();
+        for (Descriptor descriptor : descriptors) {
+            int count = descriptor.getFilesets().size();
+            if (count > 0) {
+                descriptorIndexes.put(descriptor, ResourceIndex.create(descriptor
+                        .getFilesets(), scannedFiles.subList(scannedCount,
+                        scannedCount + count)));
+                scannedCount += count;
+            }
+        }
+        for (File currentFile : getAllResources()) {
+            if (!currentFile.exists()) {
+                throw new BuildException("the resource: "
+                        + currentFile.getAbsolutePath()
+                        + " doesnot exists !");
+            }
         }
 
-        rootElement.appendChild(currentElement);
+        start = metrics.stop("scan", start);
+
+        addClassPathResources();
+        start = metrics.stop("classPath", start);
+        verifyResources();
+        metrics.stop("verify", start);
+        metrics.count("resources", getAllResources().size());
+        metrics.count("jnlpFiles", descriptors.size());
     }
 
-    private void appendAllResources(Document jnlpDoc, Element element)
-            throws DOMException, Exception {
+    /**
+     * @return the filesets of the task followed by the ones of each
+     *         descriptor.
+     */
+    private List<FileSet> getAllFilesets() {
+        List<FileSet> allFilesets = new ArrayList<FileSet>(filesets);
+        for (Descriptor descriptor : descriptors) {
+            allFilesets.addAll(descriptor.getFilesets());
+        }
+        return allFilesets;
+    }
 
-        appendElement(new File(mainjar), jnlpDoc, element, true);
+    /**
+     * Add the jars reachable from the main jars through the Class-Path of
+     * their manifests, if requested.
+     */
+    private void addClassPathResources() throws BuildException {
+        if (!manifestClassPath) {
+            return;
+        }
+        List<File> mainJars = new ArrayList<File>();
+        for (Descriptor descriptor : descriptors) {
+            mainJars.add(descriptor.getMainJar());
+        }
+        Set<File> reachable = classPathResolver.resolve(mainJars);
+        classPathJars = reachable;
+        for (String missing : classPathResolver.getMissing()) {
+            log("the Class-Path entry " + missing + " is not a jar file, it is ignored",
+                    Project.MSG_WARN);
+        }
+        resourceIndex.addAll(reachable);
+        log(reachable.size() + " jars found from the manifest Class-Path",
+                Project.MSG_VERBOSE);
+    }
 
-        for (FileSet currentResource : filesets) {
+    /**
+     * Check the signatures and the security attributes of the main jars and
+     * of the resources, if requested.
+     */
+    private void verifyResources() throws BuildException {
+        if (!verify) {
+            return;
+        }
+        try {
+            ResourceVerifier verifier = new ResourceVerifier(getDigester(),
+                    verifyCache);
+            Map<File, ResourceVerifier.Verification> verifications = verifier
+                    .verifyAll(getAllJars(), threads);
+            verifier.store();
 
-            for (File currentFile : currentResource.getDir().listFiles()) {
-                if (checkDirectories(currentResource, currentFile)) {
-                    appendElement(currentFile, jnlpDoc, element, false);
+            List<String> problems = new ArrayList<String>();
+            for (Descriptor descriptor : descriptors) {
+                File mainJar = descriptor.getMainJar();
+                Map<File, ResourceVerifier.Verification> checked = new LinkedHashMap<File, ResourceVerifier.Verification>();
+                checked.put(mainJar, verifications.get(mainJar));
+                for (File currentFile : getResourceFiles(descriptor)) {
+                    checked.put(currentFile, verifications.get(currentFile));
+                }
+                for (String problem : ResourceVerifier.check(mainJar, checked)) {
+                    if (problems.add(problem)) {
+                        log(problem, Project.MSG_ERR);
+                    }
                 }
             }
-
+            if (!problems.isEmpty()) {
+                throw new BuildException(problems.size()
+                        + " problems found by the verification of the jars");
+            }
+            log(verifications.size() + " jars verified", Project.MSG_VERBOSE);
+        } catch (IOException e) {
+            throw new BuildException("unable to verify the jars: " + e.getMessage(), e);
         }
     }
 
-    private String computePath(File currentFile, PathType type)
-            throws Exception {
-        switch (type) {
-        case FLAT:
-            return computeFlat(currentFile);
-        default:
-            return computeAutomatic(currentFile);
+    private ResourceFingerprint computeFingerprint(Descriptor descriptor,
+            List<ResourceElement> resources) throws IOException {
+        ResourceFingerprint fingerprint = new ResourceFingerprint(
+                fingerprintContent ? digester : null);
+        fingerprint.add("jnlpFile", descriptor.getFile().getAbsolutePath());
+        fingerprint.add("flatPath", flatPath);
+        fingerprint.add("streaming", Boolean.valueOf(streaming));
+        fingerprint.add("sizes", Boolean.valueOf(sizes));
+        fingerprint.add("digest", digestAlgorithm);
+        fingerprint.add("digestAttribute", digestAttribute);
+        fingerprint.add("versions", Boolean.valueOf(versions));
+        fingerprint.add("versionDir", versionDir);
+        fingerprint.add("previousRelease", previousRelease);
+        fingerprint.add("deduplicate", Boolean.valueOf(deduplicate));
+        fingerprint.add("merge", Boolean.valueOf(merge));
+        fingerprint.add("jarIndex", Boolean.valueOf(jarIndex));
+        fingerprint.add("manifestClassPath", Boolean.valueOf(manifestClassPath));
+        fingerprint.add("contentAddressedDir", contentAddressedDir);
+        fingerprint.add("bundle", bundleThreshold + ":" + bundleMaxSize + ":"
+                + bundleDir);
+        fingerprint.add("startupTrace", startupTrace);
+        if (template != null) {
+            fingerprint.add("template", template.getSharedParts());
+            fingerprint.add("properties", descriptor.getProperties());
+        }
+        if (startupTrace != null) {
+            fingerprint.addFile(startupTrace);
+        }
+        fingerprint.addFile(descriptor.getMainJar());
+        for (File currentFile : getResourceFiles(descriptor)) {
+            fingerprint.addFile(currentFile);
+            PlatformFileSet platform = getPlatform(currentFile);
+            if (platform != null) {
+                fingerprint.add("platform", platform.getOs() + "/"
+                        + platform.getArch() + "/" + platform.isNative());
+            }
         }
+        // the resources moved to an extension depend on the other descriptors
+        for (ResourceElement resource : resources) {
+            fingerprint.add(resource.getName(), resource
+                    .getAttribute(HREF_ATTRIBUTE));
+        }
+        return fingerprint;
     }
 
+    /**
+     * Digest all the resources up front, in parallel, when either the digest
+     * attributes or the content fingerprint need them.
+     */
+    private void computeDigests() throws BuildException {
+        digests = null;
+        if (digestAlgorithm == null && !versions && contentAddressedDir == null
+                && !(incremental && fingerprintContent)) {
+            return;
+        }
+        digests = getDigester().digestAll(getAllJars(), threads);
+    }
 
+    /**
+     * @return the digester of this execution, created on first use.
+     */
+    private ResourceDigester getDigester() throws BuildException {
+        if (digester == null) {
+            String algorithm = digestAlgorithm != null ? digestAlgorithm
+                    : Digests.SHA_256;
+            try {
+                digester = new ResourceDigester(algorithm, digestCache);
+            } catch (IOException e) {
+                throw new BuildException(e.getMessage(), e);
+            }
+        }
+        return digester;
+    }
 
-    private String computeFlat(File currentFile) {
+    /**
+     * Drop the resources having the same content as a previous one, if
+     * requested.
+     */
+    private void deduplicateResources() throws BuildException {
+        if (!deduplicate) {
+            return;
+        }
+        Map<File, File> duplicates = resourceIndex.deduplicate(getDigester(),
+                threads);
+        for (Map.Entry<File, File> duplicate : duplicates.entrySet()) {
+            log("the resource " + duplicate.getKey() + " is dropped, it duplicates "
+                    + duplicate.getValue());
+        }
+    }
 
-        String finalPath = null;
-        
-        int separatorPos = flatPath.lastIndexOf(File.separator);
-        
-        if (separatorPos == flatPath.length() - 1) {
-            finalPath = flatPath+currentFile.getName();
-        } else {
-            finalPath = flatPath+File.separator + currentFile.getName();
+    /**
+     * Publish the main jars and the resources under their content addressed
+     * names, if requested.
+     */
+    private void publishResources() throws BuildException {
+        publishedNames = null;
+        if (contentAddressedDir == null) {
+            return;
         }
-        
-        
-        
-        return finalPath;
+        try {
+            publishedNames = new ContentAddressedPublisher(contentAddressedDir,
+                    contentAddressedLink).publishAll(digests, threads);
+        } catch (IOException e) {
+            throw new BuildException("unable to publish the resources in "
+                    + contentAddressedDir + ": " + e.getMessage(), e);
+        }
+        log(publishedNames.size() + " resources published in "
+                + contentAddressedDir, Project.MSG_VERBOSE);
     }
 
-    private String computeAutomatic(File currentFile) {
-        return currentFile.toURI().toString();
+    /**
+     * Replace the small jars needed on every platform by bundles, if
+     * requested.
+     */
+    private void bundleResources() throws BuildException {
+        if (bundleThreshold <= 0) {
+            return;
+        }
+        List<File> candidates = new ArrayList<File>();
+        Set<File> mainJars = new LinkedHashSet<File>();
+        for (Descriptor descriptor : descriptors) {
+            mainJars.add(descriptor.getMainJar().getAbsoluteFile());
+        }
+        for (File currentFile : resourceIndex.getFiles()) {
+            if (getPlatform(currentFile) == null
+                    && !mainJars.contains(currentFile.getAbsoluteFile())) {
+                candidates.add(currentFile);
+            }
+        }
+        JarBundler bundler = new JarBundler(bundleDir, bundleThreshold,
+                bundleMaxSize);
+        try {
+            for (List<File> group : bundler.group(candidates, threads)) {
+                List<String> duplicates = new ArrayList<String>();
+                File bundle = bundler.bundle(group, duplicates);
+                for (String duplicate : duplicates) {
+                    log("the entry " + duplicate + " is found in several jars of "
+                            + bundle + ", only the first one is kept",
+                            Project.MSG_WARN);
+                }
+                resourceIndex.replace(group, bundle);
+                log(group.size() + " jars bundled in " + bundle);
+            }
+        } catch (IOException e) {
+            throw new BuildException("unable to bundle the small jars: "
+                    + e.getMessage(), e);
+        }
     }
 
-    private boolean checkDirectories(FileSet fileset, File file) {
-        for (String fileName : fileset.getDirectoryScanner().getIncludedFiles()) {
-            if (file.getName().equals(fileName)) {
-                return true;
+    /**
+     * Write into each main jar the index of its packages and of the packages
+     * of the resources needed on every platform. Done before the digests are
+     * computed, as it changes the main jars.
+     */
+    private void writeJarIndexes() throws BuildException {
+        if (!jarIndex) {
+            return;
+        }
+        Map<File, Set<File>> resourcesByMainJar = new LinkedHashMap<File, Set<File>>();
+        for (Descriptor descriptor : descriptors) {
+            File mainJar = descriptor.getMainJar().getAbsoluteFile();
+            if (!resourcesByMainJar.containsKey(mainJar)) {
+                resourcesByMainJar.put(mainJar, new LinkedHashSet<File>());
+            }
+            resourcesByMainJar.get(mainJar).addAll(getResourceFiles(descriptor));
+        }
+        for (Map.Entry<File, Set<File>> mainJarResources : resourcesByMainJar
+                .entrySet()) {
+            File mainJar = mainJarResources.getKey();
+            List<File> indexed = new ArrayList<File>();
+            for (File currentFile : mainJarResources.getValue()) {
+                if (getPlatform(currentFile) == null
+                        && !currentFile.getAbsoluteFile().equals(mainJar)) {
+                    indexed.add(currentFile);
+                }
+            }
+            byte[] index = JarIndex.create(JarIndex.relativePaths(mainJar,
+                    indexed, pathType == PathType.FLAT), threads);
+            try {
+                if (JarIndex.write(mainJar, index)) {
+                    log("jar index of " + indexed.size()
+                            + " resources written into " + mainJar);
+                }
+            } catch (IOException e) {
+                throw new BuildException("unable to write the jar index into "
+                        + mainJar + ": " + e.getMessage(), e);
             }
         }
-        return false;
     }
 
     /**
-     * Set the jar resources to include inside the jnlp.
-     * 
-     * @param fileset
-     *            the resources to include inside the jnlp.
+     * Write the precompressed variants of the jars, if requested.
      */
-    public void addConfiguredFileset(FileSet fileset) {
-        filesets.add(fileset);
+    private void precompressResources() throws BuildException {
+        if (codecs == null || codecs.isEmpty()) {
+            return;
+        }
+        Map<File, String> jars = new LinkedHashMap<File, String>();
+        for (File jar : getAllJars()) {
+            jars.put(jar, getRelativePath(jar));
+        }
+        int written = new ResourceCompressor(codecs, precompressDir)
+                .compressAll(jars, threads);
+        log(written + " precompressed variants written", Project.MSG_VERBOSE);
+    }
 
+    private void storeDigests() throws BuildException {
+        if (digester == null) {
+            return;
+        }
+        try {
+            digester.store();
+        } catch (IOException e) {
+            throw new BuildException(e.getMessage(), e);
+        }
     }
 
     /**
-     * Set the main jar file (that contain the main class to load).
-     * 
-     * @param mainjar
-     *            the main jar file (that contain the main class to load).
+     * @return the main jars and the resources.
      */
-    public void setMainJar(String mainjar) {
-        this.mainjar = mainjar;
+    private Set<File> getAllJars() {
+        Set<File> files = new LinkedHashSet<File>();
+        for (Descriptor descriptor : descriptors) {
+            files.add(descriptor.getMainJar());
+        }
+        files.addAll(getAllResources());
+        return files;
     }
 
     /**
-     * Set the jnlp file to modify.
-     * 
-     * @param jnlpFile
-     *            the jnlp file to modify.
+     * @return the resources of the task followed by the ones of each
+     *         descriptor.
      */
-    public void setJnlpFile(String jnlpFile) {
-        this.jnlpFile = jnlpFile;
+    private Set<File> getAllResources() {
+        Set<File> files = new LinkedHashSet<File>(resourceIndex.getFiles());
+        for (ResourceIndex descriptorIndex : descriptorIndexes.values()) {
+            files.addAll(descriptorIndex.getFiles());
+        }
+        return files;
     }
 
     /**
-     * Force the resources path in the jnlp file.
-     * 
-     * @param flatPath
-     *            the prefix path to use.
+     * @return the resources of the task followed by the ones of the
+     *         descriptor.
      */
-    public void setFlatPathResources(String flatPath) {
-        this.flatPath = flatPath;
+    private Set<File> getResourceFiles(Descriptor descriptor) {
+        Set<File> files = new LinkedHashSet<File>(resourceIndex.getFiles());
+        ResourceIndex descriptorIndex = descriptorIndexes.get(descriptor);
+        if (descriptorIndex != null) {
+            files.addAll(descriptorIndex.getFiles());
+        }
+        return files;
+    }
+
+    /**
+     * Publish the versioned jars and the JarDiffs from the previous release,
+     * if requested.
+     */
+    private void generateJarDiffs() throws BuildException {
+        if (versionDir == null) {
+            return;
+        }
+        Map<File, String> jars = new LinkedHashMap<File, String>();
+        for (File jar : getAllJars()) {
+            jars.put(jar, getRelativePath(jar));
+        }
+        JarDiffGenerator generator = new JarDiffGenerator(versionDir,
+                previousRelease, digester);
+        JarDiffGenerator.Report report = generator.generate(jars, threads);
+        log("JarDiff: " + report);
+    }
+
+    /**
+     * @return the path of a jar relative to the directory of its fileset, its
+     *         name if it belongs to no fileset.
+     */
+    private String getRelativePath(File jar) {
+        FileSet fileset = resourceIndex.getFileSet(jar);
+        for (ResourceIndex descriptorIndex : descriptorIndexes.values()) {
+            if (fileset == null) {
+                fileset = descriptorIndex.getFileSet(jar);
+            }
+        }
+        if (fileset == null) {
+            return jar.getName();
+        }
+        return FileUtils.getFileUtils().removeLeadingPath(
+                fileset.getDir(getProject()), jar).replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Split the resources between eager and lazy downloads, according to the
+     * startup trace if any.
+     */
+    private void classifyDownloads() throws BuildException {
+        classification = null;
+        if (startupTrace == null) {
+            return;
+        }
+        try {
+            Set<String> startupClasses = StartupClassification
+                    .readTrace(startupTrace);
+            classification = StartupClassification.classify(startupClasses,
+                    getAllResources(), threads);
+        } catch (IOException e) {
+            throw new BuildException(e.getMessage(), e);
+        }
+        log(classification.getLazyCount() + " of " + getAllResources().size()
+                + " resources are downloaded lazily", Project.MSG_VERBOSE);
+    }
+
+    /**
+     * @return the platform fileset the resource comes from, null if it is
+     *         needed on every platform.
+     */
+    private PlatformFileSet getPlatform(File currentFile) {
+        FileSet fileset = resourceIndex.getFileSet(currentFile);
+        return fileset instanceof PlatformFileSet ? (PlatformFileSet) fileset
+                : null;
+    }
+
+    private String getDigestAttribute() {
+        if (digestAttribute != null) {
+            return digestAttribute;
+        }
+        return digestAlgorithm.toLowerCase(Locale.ENGLISH).replace("-", "");
+    }
+
+    private File getFingerprintFile(File target) {
+        if (fingerprintFile != null) {
+            return fingerprintFile;
+        }
+        return new File(target.getPath() + ".fingerprint");
+    }
+
+    /**
+     * @return true if the resource is downloaded lazily. Without startup trace
+     *         everything is "eager", and native libraries are never loaded by
+     *         a class, so they always are.
+     */
+    private boolean isLazy(File currentFile) {
+        PlatformFileSet platform = getPlatform(currentFile);
+        return (platform == null || !platform.isNative()) && classification != null
+                && classification.isLazy(currentFile);
+    }
+
+    /**
+     * @return the size of the file, read once per execution.
+     */
+    private long length(File currentFile) {
+        Long length = lengths.get(currentFile);
+        if (length == null) {
+            // the jnlp files are rewritten in parallel
+            length = Long.valueOf(currentFile.length());
+            lengths.putIfAbsent(currentFile, length);
+        }
+        return length.longValue();
+    }
+
+    /**
+     * Compute what the clients download for each jnlp file, publish it and
+     * check it against the eager budget, if requested, before any jnlp file
+     * is modified.
+     */
+    private void checkBudget() throws BuildException {
+        if (budgetProperty == null && budgetReport == null && maxEagerBytes <= 0) {
+            return;
+        }
+        List<DownloadBudget> budgets = new ArrayList<DownloadBudget>();
+        DownloadBudget largest = null;
+        for (Descriptor descriptor : descriptors) {
+            DownloadBudget budget = new DownloadBudget(descriptor.getFile());
+            budget.add(descriptor.getMainJar(), length(descriptor.getMainJar()),
+                    true, null);
+            for (File currentFile : getResourceFiles(descriptor)) {
+                PlatformFileSet platform = getPlatform(currentFile);
+                String platformName = null;
+                if (platform != null) {
+                    platformName = platform.getArch() == null ? platform.getOs()
+                            : platform.getOs() + "/" + platform.getArch();
+                }
+                budget.add(currentFile, length(currentFile), !isLazy(currentFile),
+                        platformName);
+            }
+            log("JNLP " + descriptor.getFile() + " downloads "
+                    + budget.getEagerBytes() + " bytes eagerly and "
+                    + budget.getLazyBytes() + " bytes lazily", Project.MSG_VERBOSE);
+            if (largest == null || budget.getEagerBytes() > largest.getEagerBytes()) {
+                largest = budget;
+            }
+            budgets.add(budget);
+        }
+
+        if (budgetProperty != null) {
+            getProject().setNewProperty(budgetProperty + ".eager.bytes",
+                    String.valueOf(largest.getEagerBytes()));
+            getProject().setNewProperty(budgetProperty + ".lazy.bytes",
+                    String.valueOf(largest.getLazyBytes()));
+            getProject().setNewProperty(budgetProperty + ".eager.count",
+                    String.valueOf(largest.getEagerCount()));
+            getProject().setNewProperty(budgetProperty + ".lazy.count",
+                    String.valueOf(largest.getLazyCount()));
+            getProject().setNewProperty(budgetProperty + ".top",
+                    join(largest.getTopContributors(budgetTop)));
+        }
+        if (budgetReport != null) {
+            writeBudgetReport(budgets);
+        }
+
+        List<String> problems = new ArrayList<String>();
+        for (DownloadBudget budget : budgets) {
+            if (maxEagerBytes > 0 && budget.getEagerBytes() > maxEagerBytes) {
+                String problem = "the eager download of " + budget.getJnlpFile()
+                        + " is " + budget.getEagerBytes() + " bytes, over the budget of "
+                        + maxEagerBytes + " bytes; biggest jars: "
+                        + join(budget.getTopContributors(budgetTop));
+                log(problem, Project.MSG_ERR);
+                problems.add(problem);
+            }
+        }
+        if (!problems.isEmpty()) {
+            throw new BuildException(problems.size() == 1 ? problems.get(0)
+                    : problems.size() + " jnlp files exceed the eager download budget");
+        }
+    }
+
+    private String join(List<DownloadBudget.Jar> jars) {
+        StringBuilder joined = new StringBuilder();
+        for (DownloadBudget.Jar jar : jars) {
+            if (joined.length() > 0) {
+                joined.append(", ");
+            }
+            joined.append(jar);
+        }
+        return joined.toString();
+    }
+
+    private void writeBudgetReport(final List<DownloadBudget> budgets)
+            throws BuildException {
+        try {
+            writeJson(budgetReport, new JsonContent() {
+                public void write(JsonWriter json) throws IOException {
+                    json.beginObject();
+                    json.name("maxEagerBytes").value(maxEagerBytes);
+                    json.name("jnlpFiles").beginArray();
+                    for (DownloadBudget budget : budgets) {
+                        budget.write(json, budgetTop);
+                    }
+                    json.endArray();
+                    json.endObject();
+                }
+            });
+        } catch (IOException e) {
+            throw new BuildException("unable to write the budget report "
+                    + budgetReport + ": " + e.getMessage(), e);
+        }
+    }
+
+    private ResourceElement createElement(File currentFile, boolean main) {
+        PlatformFileSet platform = main ? null : getPlatform(currentFile);
+        boolean nativeLibrary = platform != null && platform.isNative();
+        ResourceElement currentElement = new ResourceElement(
+                nativeLibrary ? NATIVELIB_ENTITY : JAR_ENTITY);
+        if (platform != null) {
+            currentElement.setQualifier(OS_ATTRIBUTE, platform.getOs());
+            currentElement.setQualifier(ARCH_ATTRIBUTE, platform.getArch());
+        }
+
+        currentElement.setAttribute(HREF_ATTRIBUTE, computePath(currentFile,
+                pathType));
+        if (!main && isLazy(currentFile)) {
+            currentElement.setAttribute(DOWNLOAD_ATTRIBUTE, "lazy");
+            currentElement.setAttribute(PART_ATTRIBUTE, classification
+                    .getPart(currentFile));
+        } else {
+            currentElement.setAttribute(DOWNLOAD_ATTRIBUTE, "eager");
+        }
+
+        if (main) {
+            currentElement.setAttribute(MAIN_ATTRIBUTE, "true");
+        } else if (!nativeLibrary) {
+            currentElement.setAttribute(MAIN_ATTRIBUTE, "false");
+        }
+
+        if (sizes) {
+            currentElement.setAttribute(SIZE_ATTRIBUTE, String
+                    .valueOf(length(currentFile)));
+        }
+        if (digestAlgorithm != null) {
+            currentElement.setAttribute(getDigestAttribute(), digests
+                    .get(currentFile));
+        }
+        if (versions) {
+            currentElement.setAttribute(VERSION_ATTRIBUTE, JarDiffGenerator
+                    .version(digests.get(currentFile)));
+        }
+
+        return currentElement;
+    }
+
+    /**
+     * Build the content of the extension jnlp files, if any, written once the
+     * budget is checked.
+     * 
+     * @param extensions
+     *            the map receiving the content of each extension.
+     * @return the elements of each jnlp file, all but the main jar.
+     */
+    private Map<Descriptor, List<ResourceElement>> buildResources(
+            Map<Extension, byte[]> extensions) throws BuildException {
+        Map<Descriptor, List<ResourceElement>> resources = new LinkedHashMap<Descriptor, List<ResourceElement>>();
+        for (JNLPSet jnlpSet : jnlpSets) {
+            Extension extension = jnlpSet.getExtension();
+            if (extension == null) {
+                continue;
+            }
+            Set<File> common = getCommonResources(jnlpSet.getDescriptors());
+            extensions.put(extension, buildExtension(extension,
+                    buildResources(common)));
+            ResourceElement extensionElement = new ResourceElement(
+                    EXTENSION_ENTITY).setAttribute(NAME_ATTRIBUTE,
+                    extension.getName()).setAttribute(HREF_ATTRIBUTE,
+                    extension.getHref());
+            for (Descriptor descriptor : jnlpSet.getDescriptors()) {
+                Set<File> own = getResourceFiles(descriptor);
+                own.removeAll(common);
+                List<ResourceElement> descriptorResources = buildResources(own);
+                descriptorResources.add(extensionElement);
+                resources.put(descriptor, descriptorResources);
+            }
+        }
+        for (Descriptor descriptor : descriptors) {
+            if (!resources.containsKey(descriptor)) {
+                resources.put(descriptor,
+                        buildResources(getResourceFiles(descriptor)));
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * @return the resources of every given descriptor, but their main jars.
+     */
+    private Set<File> getCommonResources(List<Descriptor> jnlpSetDescriptors) {
+        Set<File> common = null;
+        Set<File> mainJars = new HashSet<File>();
+        for (Descriptor descriptor : jnlpSetDescriptors) {
+            mainJars.add(descriptor.getMainJar().getAbsoluteFile());
+            if (common == null) {
+                common = getResourceFiles(descriptor);
+            } else {
+                common.retainAll(getResourceFiles(descriptor));
+            }
+        }
+        for (Iterator<File> it = common.iterator(); it.hasNext();) {
+            if (mainJars.contains(it.next().getAbsoluteFile())) {
+                it.remove();
+            }
+        }
+        return common;
+    }
+
+    /**
+     * @return the content of the extension jnlp file.
+     */
+    private byte[] buildExtension(Extension extension,
+            List<ResourceElement> resources) throws BuildException {
+        try {
+            return ExtensionWriter.write(extension, resources);
+        } catch (Exception e) {
+            throw new BuildException("unable to write the extension "
+                    + extension.getFile() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write the extension jnlp file, unless it already has this content, so
+     * that the clients don't download it again.
+     */
+    private void writeExtension(Extension extension, byte[] content)
+            throws BuildException {
+        File target = extension.getFile();
+        try {
+            if (target.isFile()
+                    && Arrays.equals(content, Files.readAllBytes(target.toPath()))) {
+                log("JNLP extension " + target + " is up to date");
+                return;
+            }
+            File tmpFile = FileReplacer.createTempFile(target);
+            try {
+                OutputStream output = new FileOutputStream(tmpFile);
+                try {
+                    output.write(content);
+                } finally {
+                    FileUtils.close(output);
+                }
+                FileReplacer.replace(tmpFile, target);
+            } finally {
+                FileUtils.delete(tmpFile);
+            }
+            metrics.count("bytesWritten", content.length);
+            log("JNLP extension " + target + " written");
+        } catch (IOException e) {
+            throw new BuildException("unable to write the extension " + target
+                    + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the elements of the given resources, and the packages of their
+     *         lazy parts.
+     */
+    private List<ResourceElement> buildResources(Collection<File> files)
+            throws BuildException {
+        List<ResourceElement> resources = new ArrayList<ResourceElement>(
+                files.size() + 1);
+        Set<String> parts = new HashSet<String>();
+
+        for (File currentFile : files) {
+            resources.add(createElement(currentFile, false));
+            if (isLazy(currentFile)) {
+                parts.add(classification.getPart(currentFile));
+            }
+        }
+        if (classification != null) {
+            for (Map.Entry<String, String> currentPackage : classification
+                    .getPackages().entrySet()) {
+                // classes of the default package can't be mapped to a part
+                if (currentPackage.getKey().length() > 0
+                        && parts.contains(currentPackage.getValue())) {
+                    resources.add(new ResourceElement(PACKAGE_ENTITY)
+                            .setAttribute(NAME_ATTRIBUTE, currentPackage.getKey() + ".*")
+                            .setAttribute(PART_ATTRIBUTE, currentPackage.getValue()));
+                }
+            }
+        }
+        return resources;
+    }
+
+    private String computePath(File currentFile, PathType type) {
+        switch (type) {
+        case FLAT:
+            return computeFlat(currentFile);
+        case CONTENT_ADDRESSED:
+            return computeContentAddressed(currentFile);
+        default:
+            return computeAutomatic(currentFile);
+        }
+    }
+
+
+
+    private String computeFlat(File currentFile) {
+
+        String finalPath = null;
+        
+        int separatorPos = flatPath.lastIndexOf(File.separator);
+        
+        if (separatorPos == flatPath.length() - 1) {
+            finalPath = flatPath+currentFile.getName();
+        } else {
+            finalPath = flatPath+File.separator + currentFile.getName();
+        }
+        
+        
+        
+        return finalPath;
+    }
+
+    /**
+     * Compute the href of a published resource: its content addressed name,
+     * prefixed by the flat path if any, relative to the codebase otherwise.
+     */
+    private String computeContentAddressed(File currentFile) {
+        String name = publishedNames.get(currentFile);
+        if (flatPath == null) {
+            return name;
+        }
+        return flatPath.endsWith("/") ? flatPath + name : flatPath + "/" + name;
+    }
+
+    private String computeAutomatic(File currentFile) {
+        return currentFile.toURI().toString();
+    }
+
+    /**
+     * Set the jar resources to include inside the jnlp.
+     * 
+     * @param fileset
+     *            the resources to include inside the jnlp.
+     */
+    public void addConfiguredFileset(FileSet fileset) {
+        filesets.add(fileset);
+
+    }
+
+    /**
+     * Add a fileset whose jars are only needed on a platform: they are written
+     * in a resources part restricted to its os and arch, as nativelib elements
+     * if they hold native libraries.
+     * 
+     * @param fileset
+     *            the platform fileset to add.
+     */
+    public void addConfiguredPlatformFileset(PlatformFileSet fileset) {
+        filesets.add(fileset);
+    }
+
+    /**
+     * Generate the jnlp files from the given template, instead of modifying
+     * existing ones.
+     * 
+     * @param template
+     *            the parts of the jnlp files other than the resources.
+     */
+    public void addConfiguredTemplate(JNLPTemplate template) {
+        if (this.template != null) {
+            throw new BuildException("only one template can be set");
+        }
+        this.template = template;
+    }
+
+    /**
+     * Add a set of jnlp files to modify with the same resources. The resources
+     * are scanned once for all the jnlp files, which are then modified in
+     * parallel.
+     * 
+     * @param jnlpSet
+     *            the jnlp files to modify.
+     */
+    public void addConfiguredJnlpSet(JNLPSet jnlpSet) {
+        jnlpSets.add(jnlpSet);
+    }
+
+    /**
+     * Set the maximum number of jnlp files modified in parallel, and of
+     * filesets scanned in parallel when the JVM has no virtual threads.
+     * Defaults to the number of available processors.
+     * 
+     * @param threads
+     *            the number of worker threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Set the main jar file (that contain the main class to load).
+     * 
+     * @param mainjar
+     *            the main jar file (that contain the main class to load).
+     */
+    public void setMainJar(String mainjar) {
+        this.mainjar = mainjar;
+    }
+
+    /**
+     * Set the jnlp file to modify.
+     * 
+     * @param jnlpFile
+     *            the jnlp file to modify.
+     */
+    public void setJnlpFile(String jnlpFile) {
+        this.jnlpFile = jnlpFile;
+    }
+
+    /**
+     * Force the resources path in the jnlp file.
+     * 
+     * @param flatPath
+     *            the prefix path to use.
+     */
+    public void setFlatPathResources(String flatPath) {
+        this.flatPath = flatPath;
     }
     
+    /**
+     * Rewrite the jnlp file in a single streaming pass instead of loading it
+     * in a DOM tree. Everything but the resources part is copied as it is read,
+     * so memory usage stays flat whatever the size of the jnlp file, but the
+     * output is not pretty printed. Defaults to false.
+     * 
+     * @param streaming
+     *            true to rewrite the jnlp file in streaming mode.
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Leave the jnlp file untouched when neither the resources nor the task
+     * settings changed since the last execution. The state of the last
+     * execution is stored in a fingerprint file. Defaults to false.
+     * 
+     * @param incremental
+     *            true to skip the modification of an up to date jnlp file.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Set the file where the fingerprint of the last execution is stored, in
+     * incremental mode. Defaults to the jnlp file name suffixed by
+     * <code>.fingerprint</code>.
+     * 
+     * @param fingerprintFile
+     *            the fingerprint file.
+     */
+    public void setFingerprintFile(File fingerprintFile) {
+        this.fingerprintFile = fingerprintFile;
+    }
+
+    /**
+     * Fingerprint the content of the resources too, in incremental mode.
+     * Slower, but catches resources rebuilt with the same size and date.
+     * Defaults to false.
+     * 
+     * @param fingerprintContent
+     *            true to fingerprint the content of the resources.
+     */
+    public void setFingerprintContent(boolean fingerprintContent) {
+        this.fingerprintContent = fingerprintContent;
+    }
+
+    /**
+     * Set the size attribute of every jar entry, used by the clients to show
+     * the download progress. Defaults to false.
+     * 
+     * @param sizes
+     *            true to set the size of the jar entries.
+     */
+    public void setSizes(boolean sizes) {
+        this.sizes = sizes;
+    }
+
+    /**
+     * Set a digest of the content of every jar entry as an attribute, computed
+     * with the given algorithm (SHA-256 for instance). Not set by default.
+     * 
+     * @param digestAlgorithm
+     *            the digest algorithm.
+     */
+    public void setDigest(String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    /**
+     * Set the name of the digest attribute of the jar entries. Defaults to the
+     * digest algorithm name in lower case without dash, like sha256.
+     * 
+     * @param digestAttribute
+     *            the name of the digest attribute.
+     */
+    public void setDigestAttribute(String digestAttribute) {
+        this.digestAttribute = digestAttribute;
+    }
+
+    /**
+     * Set a file where the digests of the resources are cached between
+     * executions, so unchanged resources are not digested again. By default the
+     * digests are not cached between executions.
+     * 
+     * @param digestCache
+     *            the digest cache file.
+     */
+    public void setDigestCache(File digestCache) {
+        this.digestCache = digestCache;
+    }
+
+    /**
+     * Set a class loading trace of the application startup, either the output
+     * of <code>-verbose:class</code> or a list of class names, one per line.
+     * Only the jars serving classes loaded at startup are downloaded eagerly,
+     * every other jar is downloaded lazily, in its own part. Not set by
+     * default: every jar is downloaded eagerly.
+     * 
+     * @param startupTrace
+     *            the class loading trace.
+     */
+    public void setStartupTrace(File startupTrace) {
+        this.startupTrace = startupTrace;
+    }
+
+    /**
+     * Set the version attribute of every jar entry, for servers implementing
+     * the version-based download protocol. The version of a jar is derived
+     * from the digest of its content. Defaults to false.
+     * 
+     * @param versions
+     *            true to set the version of the jar entries.
+     */
+    public void setVersions(boolean versions) {
+        this.versions = versions;
+    }
+
+    /**
+     * Set the directory the versioned jars are published in, for servers
+     * implementing the version-based download protocol, needs versions to be
+     * enabled. Each jar is identified by its path relative to the directory of
+     * its fileset, and its version <i>v</i> is published in this directory as
+     * <code>path/name__V<i>v</i>.jar</code>. Not set by default.
+     * 
+     * @param versionDir
+     *            the directory to publish the versioned jars in.
+     */
+    public void setVersionDir(File versionDir) {
+        this.versionDir = versionDir;
+    }
+
+    /**
+     * Set the directory holding the jars of the previous release, laid out
+     * like the filesets of the task, needs a versionDir. For every jar that
+     * changed since this release, looked up by relative path, a JarDiff is
+     * published in the versionDir, named
+     * <code>path/name__V<i>previous version</i>__V<i>version</i>.jardiff</code>, so
+     * clients can download only what changed.
+     * 
+     * @param previousRelease
+     *            the directory of the previous release jars.
+     */
+    public void setPreviousRelease(File previousRelease) {
+        this.previousRelease = previousRelease;
+    }
+
+    /**
+     * Write precompressed variants of every jar into the precompressDir, for
+     * the given comma separated list of codecs: gzip (<code>.gz</code> files)
+     * and deflate (<code>.deflate</code> files). Variants newer than their jar
+     * are not written again. Not set by default.
+     * 
+     * @param precompress
+     *            the codecs to precompress the jars with.
+     */
+    public void setPrecompress(String precompress) {
+        this.precompress = precompress;
+    }
+
+    /**
+     * Set the directory the precompressed variants are written in. Each jar is
+     * identified by its path relative to the directory of its fileset, and its
+     * variants are written in this directory as <code>path/name.jar.gz</code>
+     * and <code>path/name.jar.deflate</code>, so they can be deployed along
+     * with the jars. Needed by precompress.
+     * 
+     * @param precompressDir
+     *            the directory to write the precompressed variants in.
+     */
+    public void setPrecompressDir(File precompressDir) {
+        this.precompressDir = precompressDir;
+    }
+
+    /**
+     * Drop the resources having the same content as another one, the same
+     * library being included twice under different names for instance. Only
+     * the first one is kept. Defaults to false.
+     * 
+     * @param deduplicate
+     *            true to drop duplicate resources.
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * Verify that the main jar and every resource are entirely signed, by the
+     * same signers, and that their manifests don't declare Permissions or
+     * Codebase attributes different from the ones of the main jar, which must
+     * declare Permissions. The build fails on the first verification
+     * problem, instead of the client at launch. Defaults to false.
+     * 
+     * @param verify
+     *            true to verify the jars.
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Set the file the results of the verification are cached in, by content
+     * digest, so that only the jars whose content changed are verified again.
+     * 
+     * @param verifyCache
+     *            the verification cache file.
+     */
+    public void setVerifyCache(File verifyCache) {
+        this.verifyCache = verifyCache;
+    }
+
+    /**
+     * Add to the resources the jars reachable from the main jar through the
+     * Class-Path attribute of the manifests, transitively, so that the
+     * resources don't have to be listed by hand: the filesets become
+     * optional. Defaults to false.
+     * 
+     * @param manifestClassPath
+     *            true to follow the Class-Path of the manifests.
+     */
+    public void setManifestClassPath(boolean manifestClassPath) {
+        this.manifestClassPath = manifestClassPath;
+    }
+
+    /**
+     * Keep running after the jnlp files are modified, and modify them again
+     * whenever a resource or a main jar changes. Only the directories where a
+     * file changed are scanned again. The budget and metrics properties keep
+     * the values of the first generation. Defaults to false.
+     * 
+     * @param watch
+     *            true to watch the resources.
+     */
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    /**
+     * Set the time without change ending a burst of changes, the jnlp files
+     * being modified once per burst. Defaults to 500 ms.
+     * 
+     * @param watchDelay
+     *            the quiet period in milliseconds.
+     */
+    public void setWatchDelay(long watchDelay) {
+        this.watchDelay = watchDelay;
+    }
+
+    /**
+     * Stop watching after the given time without change. Defaults to 0: watch
+     * until the build is interrupted.
+     * 
+     * @param watchTimeout
+     *            the timeout in milliseconds.
+     */
+    public void setWatchTimeout(long watchTimeout) {
+        this.watchTimeout = watchTimeout;
+    }
+
+    /**
+     * Publish the main jar and the resources in the given directory, under
+     * content addressed names (the name of the jar followed by the beginning
+     * of its digest), and write those names as hrefs, prefixed by the flat
+     * path if any. An unchanged jar keeps the same href from a release to
+     * another, and a published jar never changes, so it can be served with
+     * far-future cache headers.
+     * 
+     * @param contentAddressedDir
+     *            the directory the resources are published in.
+     */
+    public void setContentAddressedDir(File contentAddressedDir) {
+        this.contentAddressedDir = contentAddressedDir;
+    }
+
+    /**
+     * Publish the resources as hard links instead of copies, when the file
+     * system supports it. Only safe if the jars are never rewritten in place,
+     * as a published jar would change with its source. Defaults to false.
+     * 
+     * @param contentAddressedLink
+     *            true to publish the resources as hard links.
+     */
+    public void setContentAddressedLink(boolean contentAddressedLink) {
+        this.contentAddressedLink = contentAddressedLink;
+    }
+
+    /**
+     * Merge the jars smaller than the given size into bundle jars, so the
+     * client makes one request per bundle instead of one per jar. Signed jars,
+     * jars declaring services or manifest attributes other than the build ones
+     * (Created-By, ...), and jars specific to a platform are never bundled. The
+     * entries found in several jars of a bundle are reported as warnings.
+     * Defaults to 0: no jar is bundled.
+     * 
+     * @param bundleThreshold
+     *            the size in bytes under which a jar is bundled.
+     */
+    public void setBundleThreshold(long bundleThreshold) {
+        this.bundleThreshold = bundleThreshold;
+    }
+
+    /**
+     * Set the maximum size of the jars merged in one bundle. Defaults to 1 MB.
+     * 
+     * @param bundleMaxSize
+     *            the maximum size in bytes of the jars of a bundle.
+     */
+    public void setBundleMaxSize(long bundleMaxSize) {
+        this.bundleMaxSize = bundleMaxSize;
+    }
+
+    /**
+     * Set the directory the bundles are written in, needed to bundle small
+     * jars. Bundles are named after the jars they hold, so existing bundles
+     * are reused while their jars don't change.
+     * 
+     * @param bundleDir
+     *            the directory of the bundles.
+     */
+    public void setBundleDir(File bundleDir) {
+        this.bundleDir = bundleDir;
+    }
+
+    /**
+     * Write a jar index (META-INF/INDEX.LIST) into the main jar, listing the
+     * packages of the main jar and of every resource not specific to a
+     * platform, so the client loads a class from the right jar at once. The
+     * jars have to be real jars, and the main jar is rewritten in place.
+     * Defaults to false.
+     * 
+     * @param jarIndex
+     *            true to write a jar index into the main jar.
+     */
+    public void setJarIndex(boolean jarIndex) {
+        this.jarIndex = jarIndex;
+    }
+
+    /**
+     * Set the prefix of the properties the download sizes of the jnlp file
+     * are published in: <code><i>prefix</i>.eager.bytes</code>,
+     * <code>.lazy.bytes</code>, <code>.eager.count</code>,
+     * <code>.lazy.count</code> and <code>.top</code>, the list of the
+     * biggest eager jars. With several jnlp files, the one having the biggest
+     * eager download is published. Properties being immutable, with watch
+     * they hold the sizes of the first generation, while the budgetReport is
+     * written again by every generation. Not set by default.
+     * 
+     * @param budgetProperty
+     *            the prefix of the budget properties.
+     */
+    public void setBudgetProperty(String budgetProperty) {
+        this.budgetProperty = budgetProperty;
+    }
+
+    /**
+     * Write the download sizes of every jnlp file, jar per jar, in the given
+     * JSON file. Not set by default.
+     * 
+     * @param budgetReport
+     *            the JSON report file.
+     */
+    public void setBudgetReport(File budgetReport) {
+        this.budgetReport = budgetReport;
+    }
+
+    /**
+     * Fail the build, before any jnlp file is modified, when the jars a
+     * client downloads before the application starts (main jar, eager jars,
+     * and the native libraries of its platform) exceed the given size.
+     * Defaults to 0: no limit.
+     * 
+     * @param maxEagerBytes
+     *            the maximum eager download size in bytes.
+     */
+    public void setMaxEagerBytes(long maxEagerBytes) {
+        this.maxEagerBytes = maxEagerBytes;
+    }
+
+    /**
+     * Set the number of biggest eager jars reported. Defaults to 10.
+     * 
+     * @param budgetTop
+     *            the number of top contributors.
+     */
+    public void setBudgetTop(int budgetTop) {
+        this.budgetTop = budgetTop;
+    }
+
+    /**
+     * Set the prefix of the properties the metrics of the execution are
+     * published in: <code><i>prefix</i>.time.<i>phase</i></code>, the time in
+     * milliseconds spent in each phase (scan, digest, parse, serialize,
+     * replace... and total), the times of the jnlp files modified in
+     * parallel adding up, and the counters <code><i>prefix</i>.resources</code>,
+     * <code>.jnlpFiles</code>, <code>.jnlpFilesWritten</code>,
+     * <code>.jnlpFilesUpToDate</code> and <code>.bytesWritten</code>.
+     * Properties being immutable, with watch they hold the metrics of the
+     * first generation, while the metricsFile is written again by every
+     * generation. Not set by default: nothing is measured.
+     * 
+     * @param metricsProperty
+     *            the prefix of the metrics properties.
+     */
+    public void setMetricsProperty(String metricsProperty) {
+        this.metricsProperty = metricsProperty;
+    }
+
+    /**
+     * Write the metrics of the execution in the given JSON file, rewritten
+     * at each execution. Not set by default.
+     * 
+     * @param metricsFile
+     *            the JSON metrics file.
+     */
+    public void setMetricsFile(File metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+
+    /**
+     * Keep the existing resources parts of the jnlp file, os, arch or locale
+     * specific ones included, and add to them only the jars (or packages) they
+     * don't reference yet. Jars are identified by their href. Defaults to
+     * false: the existing resources parts are replaced.
+     * 
+     * @param merge
+     *            true to merge the resources into the existing ones.
+     */
+    public void setMerge(boolean merge) {
+        this.merge = merge;
+    }
+
     private enum PathType {
-        FLAT, AUTOMATIC;
+        FLAT, AUTOMATIC, CONTENT_ADDRESSED;
     }
 }
@@ -0,0 +1,410 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * The parts of the jnlp files generated from scratch, instead of modifying
+ * existing ones. The information, security and application-desc parts are
+ * the same for every jnlp file: they are rendered once and copied as they are
+ * into each file, only the root element and the resources being written for
+ * each one.
+ * 
+ * <pre>
+ * &lt;template codebase="http://example.com/app" java="1.6+" mainClass="com.example.Main"&gt;
+ *     &lt;information title="Application" vendor="Example"/&gt;
+ *     &lt;security allPermissions="true"/&gt;
+ *     &lt;property name="server" value="example.com"/&gt;
+ *     &lt;argument value="-fast"/&gt;
+ * &lt;/template&gt;
+ * </pre>
+ */
+public class JNLPTemplate {
+
+    private static final String ENCODING = "UTF-8";
+    private static final String LINE_SEPARATOR = "\n";
+    private static final String INDENT = "    ";
+    private static final String PROPERTY_ENTITY = "property";
+
+    private String spec = "1.0+";
+    private String codebase;
+    private String java;
+    private String mainClass;
+    private Information information;
+    private Security security;
+    private List<Property> properties = new ArrayList<Property>();
+    private List<Argument> arguments = new ArrayList<Argument>();
+
+    /** the rendered shared parts, before and after the resources. */
+    private byte[] head = null;
+    private byte[] tail = null;
+
+    /**
+     * Set the version of the jnlp specification. Defaults to 1.0+.
+     */
+    public void setSpec(String spec) {
+        this.spec = spec;
+    }
+
+    /**
+     * Set the codebase of the jnlp files. Not set by default.
+     */
+    public void setCodebase(String codebase) {
+        this.codebase = codebase;
+    }
+
+    /**
+     * Set the versions of java the application runs on, like 1.6+. Not set
+     * by default.
+     */
+    public void setJava(String java) {
+        this.java = java;
+    }
+
+    /**
+     * Set the main class of the application, found in the main jar if not
+     * set.
+     */
+    public void setMainClass(String mainClass) {
+        this.mainClass = mainClass;
+    }
+
+    public Information createInformation() {
+        if (information != null) {
+            throw new BuildException("a template can have only one information");
+        }
+        information = new Information();
+        return information;
+    }
+
+    public Security createSecurity() {
+        if (security != null) {
+            throw new BuildException("a template can have only one security");
+        }
+        security = new Security();
+        return security;
+    }
+
+    /**
+     * Add a system property set for every jnlp file.
+     */
+    public Property createProperty() {
+        Property property = new Property();
+        properties.add(property);
+        return property;
+    }
+
+    /**
+     * Add an argument of the application.
+     */
+    public Argument createArgument() {
+        Argument argument = new Argument();
+        arguments.add(argument);
+        return argument;
+    }
+
+    /**
+     * Check the template and render its shared parts, once.
+     * 
+     * @throws BuildException
+     *             if a mandatory part is missing.
+     */
+    void validate() throws BuildException {
+        if (information == null || information.title == null
+                || information.vendor == null) {
+            throw new BuildException("the template needs an information with a title and a vendor");
+        }
+        for (Property property : properties) {
+            property.validate();
+        }
+        try {
+            renderSharedParts();
+        } catch (Exception e) {
+            throw new BuildException("unable to render the template: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write a whole jnlp file.
+     * 
+     * @param output
+     *            where to write the jnlp file, not closed.
+     * @param href
+     *            the href of the jnlp file.
+     * @param resources
+     *            the elements of its resources parts, main jar included.
+     * @param variantProperties
+     *            the system properties of this jnlp file only.
+     */
+    void write(OutputStream output, String href, List<ResourceElement> resources,
+            List<Property> variantProperties) throws Exception {
+        renderSharedParts();
+        List<ResourceElement> allResources = new ArrayList<ResourceElement>(
+                resources.size() + properties.size() + variantProperties.size()
+                        + 1);
+        if (java != null) {
+            allResources.add(new ResourceElement("j2se").setAttribute("version",
+                    java));
+        }
+        allResources.addAll(resources);
+        for (Property property : properties) {
+            allResources.add(property.toElement());
+        }
+        for (Property property : variantProperties) {
+            allResources.add(property.toElement());
+        }
+
+        XMLStreamWriter writer = XmlProviders.get().createStreamWriter(output,
+                ENCODING);
+        writer.writeStartDocument(ENCODING, "1.0");
+        writer.writeCharacters(LINE_SEPARATOR);
+        writer.writeStartElement("jnlp");
+        writer.writeAttribute("spec", spec);
+        if (codebase != null) {
+            writer.writeAttribute("codebase", codebase);
+        }
+        writer.writeAttribute("href", href);
+        writer.writeCharacters(LINE_SEPARATOR);
+        // the writer keeps track of the open root element only
+        writer.flush();
+        output.write(head);
+        for (Map.Entry<String, List<ResourceElement>> section : ResourcesMerge
+                .sections(allResources).entrySet()) {
+            if (!section.getValue().isEmpty()) {
+                StaxJNLPRewriter.writeResources(writer, section.getValue());
+            }
+        }
+        writer.flush();
+        output.write(tail);
+        writer.writeEndElement();
+        writer.writeCharacters(LINE_SEPARATOR);
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+    }
+
+    /**
+     * @return the shared parts rendered by {@link #validate()}, to fingerprint
+     *         them.
+     */
+    synchronized String getSharedParts() {
+        Charset charset = Charset.forName(ENCODING);
+        return new String(head, charset) + new String(tail, charset);
+    }
+
+    private synchronized void renderSharedParts() throws Exception {
+        if (head != null) {
+            return;
+        }
+        XmlProviders providers = XmlProviders.get();
+
+        ByteArrayOutputStream headOutput = new ByteArrayOutputStream();
+        XMLStreamWriter writer = providers.createStreamWriter(headOutput,
+                ENCODING);
+        writer.writeCharacters(INDENT);
+        writer.writeStartElement("information");
+        writeText(writer, "title", information.title);
+        writeText(writer, "vendor", information.vendor);
+        if (information.homepage != null) {
+            writer.writeCharacters(LINE_SEPARATOR + INDENT + INDENT);
+            writer.writeEmptyElement("homepage");
+            writer.writeAttribute("href", information.homepage);
+        }
+        if (information.description != null) {
+            writeText(writer, "description", information.description);
+        }
+        if (information.offlineAllowed) {
+            writer.writeCharacters(LINE_SEPARATOR + INDENT + INDENT);
+            writer.writeEmptyElement("offline-allowed");
+        }
+        writer.writeCharacters(LINE_SEPARATOR + INDENT);
+        writer.writeEndElement();
+        writer.writeCharacters(LINE_SEPARATOR);
+        if (security != null && security.getPermissions() != null) {
+            writer.writeCharacters(INDENT);
+            writer.writeStartElement("security");
+            writer.writeCharacters(LINE_SEPARATOR + INDENT + INDENT);
+            writer.writeEmptyElement(security.getPermissions());
+            writer.writeCharacters(LINE_SEPARATOR + INDENT);
+            writer.writeEndElement();
+            writer.writeCharacters(LINE_SEPARATOR);
+        }
+        writer.flush();
+        writer.close();
+
+        ByteArrayOutputStream tailOutput = new ByteArrayOutputStream();
+        writer = providers.createStreamWriter(tailOutput, ENCODING);
+        writer.writeCharacters(INDENT);
+        if (arguments.isEmpty()) {
+            writer.writeEmptyElement("application-desc");
+        } else {
+            writer.writeStartElement("application-desc");
+        }
+        if (mainClass != null) {
+            writer.writeAttribute("main-class", mainClass);
+        }
+        if (!arguments.isEmpty()) {
+            for (Argument argument : arguments) {
+                writeText(writer, "argument", argument.value);
+            }
+            writer.writeCharacters(LINE_SEPARATOR + INDENT);
+            writer.writeEndElement();
+        }
+        writer.writeCharacters(LINE_SEPARATOR);
+        writer.flush();
+        writer.close();
+
+        head = headOutput.toByteArray();
+        tail = tailOutput.toByteArray();
+    }
+
+    private static void writeText(XMLStreamWriter writer, String name,
+            String text) throws XMLStreamException {
+        writer.writeCharacters(LINE_SEPARATOR + INDENT + INDENT);
+        writer.writeStartElement(name);
+        writer.writeCharacters(text == null ? "" : text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * The information part of the jnlp files.
+     */
+    public static class Information {
+        private String title;
+        private String vendor;
+        private String homepage;
+        private String description;
+        private boolean offlineAllowed = false;
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public void setVendor(String vendor) {
+            this.vendor = vendor;
+        }
+
+        /**
+         * Set the href of the home page of the application.
+         */
+        public void setHomepage(String homepage) {
+            this.homepage = homepage;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Let the application run without network. Defaults to false.
+         */
+        public void setOfflineAllowed(boolean offlineAllowed) {
+            this.offlineAllowed = offlineAllowed;
+        }
+    }
+
+    /**
+     * The security part of the jnlp files.
+     */
+    public static class Security {
+        private boolean allPermissions = false;
+        private boolean j2eeApplicationClientPermissions = false;
+
+        /**
+         * Request all the permissions. Defaults to false.
+         */
+        public void setAllPermissions(boolean allPermissions) {
+            this.allPermissions = allPermissions;
+        }
+
+        /**
+         * Request the permissions of a J2EE application client. Defaults to
+         * false.
+         */
+        public void setJ2eeApplicationClientPermissions(
+                boolean j2eeApplicationClientPermissions) {
+            this.j2eeApplicationClientPermissions = j2eeApplicationClientPermissions;
+        }
+
+        /**
+         * @return the name of the element requesting the permissions, null if
+         *         none are requested.
+         */
+        String getPermissions() {
+            if (allPermissions) {
+                return "all-permissions";
+            }
+            return j2eeApplicationClientPermissions ? "j2ee-application-client-permissions"
+                    : null;
+        }
+    }
+
+    /**
+     * A system property set by the jnlp client.
+     */
+    public static class Property {
+        private String name;
+        private String value;
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+
+        void validate() throws BuildException {
+            if (name == null || value == null) {
+                throw new BuildException("a jnlp property needs a name and a value");
+            }
+        }
+
+        ResourceElement toElement() {
+            return new ResourceElement(PROPERTY_ENTITY).setAttribute("name", name)
+                    .setAttribute("value", value);
+        }
+
+        public String toString() {
+            return name + "=" + value;
+        }
+    }
+
+    /**
+     * An argument of the application.
+     */
+    public static class Argument {
+        private String value;
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Merges small jars into bundle jars, so that the client makes one request
+ * per bundle instead of one per jar. Entries are copied without being
+ * inflated. Signed jars can't be merged without breaking their signature,
+ * and jars declaring services or manifest attributes (Class-Path,
+ * Implementation-Version, ...) would lose them when merged, so they are never
+ * bundled.
+ */
+final class JarBundler {
+
+    private static final String META_INF = "META-INF/";
+    private static final String SERVICES = "META-INF/services/";
+    private static final String BUNDLE_PREFIX = "bundle-";
+    private static final String JAR_SUFFIX = ".jar";
+    private static final String MANIFEST = "Manifest-Version: 1.0\r\n"
+            + "Created-By: partial-jnlp-task\r\n\r\n";
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    private static final int NAME_DIGEST_LENGTH = 16;
+    /**
+     * The manifest attributes describing how a jar was built, lost without
+     * harm when it is bundled.
+     */
+    private static final Set<String> BUILD_ATTRIBUTES = new HashSet<String>(
+            Arrays.asList(new String[] {"Manifest-Version", "Created-By",
+                    "Ant-Version", "Built-By"}));
+
+    private final File bundleDir;
+
+    private final long threshold;
+
+    private final long maxSize;
+
+    /**
+     * @param bundleDir
+     *            the directory the bundles are written in.
+     * @param threshold
+     *            the size under which a jar is bundled.
+     * @param maxSize
+     *            the maximum size of the jars merged in a bundle.
+     */
+    JarBundler(File bundleDir, long threshold, long maxSize) {
+        this.bundleDir = bundleDir;
+        this.threshold = threshold;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Group the jars to bundle, in their order. Only the central directories
+     * of the small jars are read, in parallel.
+     * 
+     * @return the groups of jars to merge, each one holding at least two jars.
+     */
+    List<List<File>> group(Collection<File> jars, int threads) {
+        final List<File> small = new ArrayList<File>();
+        for (File jar : jars) {
+            if (jar.length() < threshold) {
+                small.add(jar);
+            }
+        }
+        List<Callable<Boolean>> checks = new ArrayList<Callable<Boolean>>(small.size());
+        for (final File jar : small) {
+            checks.add(new Callable<Boolean>() {
+                public Boolean call() throws IOException {
+                    return Boolean.valueOf(isBundleable(jar));
+                }
+            });
+        }
+        List<Boolean> bundleable = Workers.invokeAll(checks, threads);
+
+        List<List<File>> groups = new ArrayList<List<File>>();
+        List<File> group = new ArrayList<File>();
+        long groupSize = 0;
+        for (int i = 0; i < small.size(); i++) {
+            File jar = small.get(i);
+            if (!bundleable.get(i).booleanValue()) {
+                continue;
+            }
+            if (!group.isEmpty() && groupSize + jar.length() > maxSize) {
+                addGroup(groups, group);
+                group = new ArrayList<File>();
+                groupSize = 0;
+            }
+            group.add(jar);
+            groupSize += jar.length();
+        }
+        addGroup(groups, group);
+        return groups;
+    }
+
+    private static void addGroup(List<List<File>> groups, List<File> group) {
+        if (group.size() > 1) {
+            groups.add(group);
+        }
+    }
+
+    /**
+     * @return true if the jar is not signed, declares no service and its
+     *         manifest has no other attribute than the build ones.
+     */
+    static boolean isBundleable(File jar) throws IOException {
+        List<String> entryNames = JarContents.entryNames(jar);
+        if (!isBundleable(entryNames)) {
+            return false;
+        }
+        return !entryNames.contains(MANIFEST_NAME) || hasBuildManifest(jar);
+    }
+
+    /**
+     * @return true if the jar is not signed and declares no service.
+     */
+    static boolean isBundleable(List<String> entryNames) {
+        for (String name : entryNames) {
+            if (name.startsWith(SERVICES) && !name.endsWith("/")) {
+                return false;
+            }
+            if (JarContents.isSignatureFile(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the manifest of the jar has only build attributes, and
+     *         no per entry attributes.
+     */
+    private static boolean hasBuildManifest(File jar) throws IOException {
+        ZipFile zip = new ZipFile(jar);
+        try {
+            ZipEntry entry = zip.getEntry(MANIFEST_NAME);
+            InputStream input = zip.getInputStream(entry);
+            Manifest manifest;
+            try {
+                manifest = new Manifest(input);
+            } finally {
+                FileUtils.close(input);
+            }
+            if (!manifest.getEntries().isEmpty()) {
+                return false;
+            }
+            for (Object name : manifest.getMainAttributes().keySet()) {
+                if (!BUILD_ATTRIBUTES.contains(name.toString())) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Write the bundle of the given jars, unless it already exists. The name
+     * of a bundle depends on the name, size and date of its jars, so a
+     * bundle is written again only when one of them changed.
+     * 
+     * @param duplicates
+     *            receives the names of the entries found in several jars, the
+     *            first one being kept.
+     * @return the bundle.
+     */
+    File bundle(List<File> jars, List<String> duplicates) throws IOException {
+        File bundle = new File(bundleDir, BUNDLE_PREFIX + bundleName(jars)
+                + JAR_SUFFIX);
+        if (bundle.isFile()) {
+            return bundle;
+        }
+        if (!bundleDir.isDirectory() && !bundleDir.mkdirs()) {
+            throw new IOException("unable to create " + bundleDir);
+        }
+        File tmpFile = FileReplacer.createTempFile(bundle);
+        try {
+            RawZipWriter writer = new RawZipWriter(tmpFile);
+            try {
+                boolean manifestWritten = false;
+                for (File jar : jars) {
+                    RawZipFile source = new RawZipFile(jar);
+                    try {
+                        for (RawZipFile.Entry entry : source.getEntries()) {
+                            if (!manifestWritten) {
+                                writer.add(META_INF, new byte[0], entry.getDosTime());
+                                writer.add(MANIFEST_NAME, MANIFEST
+                                        .getBytes(RawZipFile.UTF_8), entry
+                                        .getDosTime());
+                                manifestWritten = true;
+                            }
+                            String name = entry.getName();
+                            if (isMetaInf(name)) {
+                                continue;
+                            }
+                            if (writer.contains(name)) {
+                                if (!entry.isDirectory()) {
+                                    duplicates.add(name);
+                                }
+                                continue;
+                            }
+                            writer.copy(source, entry);
+                        }
+                    } finally {
+                        source.close();
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            FileReplacer.replace(tmpFile, bundle);
+        } finally {
+            FileUtils.delete(tmpFile);
+        }
+        return bundle;
+    }
+
+    /**
+     * @return true for the entries directly in META-INF (the manifest, the
+     *         jar index, ...), which are specific to each jar.
+     */
+    private static boolean isMetaInf(String name) {
+        return name.startsWith(META_INF)
+                && name.indexOf('/', META_INF.length()) == -1;
+    }
+
+    private static String bundleName(List<File> jars) {
+        MessageDigest digest = Digests.newDigest(Digests.SHA_256);
+        for (File jar : jars) {
+            digest.update((jar.getAbsolutePath() + ":" + jar.length() + ":"
+                    + jar.lastModified() + "\n").getBytes(RawZipFile.UTF_8));
+        }
+        return Digests.toHex(digest.digest()).substring(0, NAME_DIGEST_LENGTH);
+    }
+}
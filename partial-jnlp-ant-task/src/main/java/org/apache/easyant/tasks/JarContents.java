@@ -0,0 +1,91 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Helpers to read the content of jar files. Only the central directory of the
+ * jars is read, entries are never inflated.
+ */
+final class JarContents {
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String META_INF = "META-INF/";
+
+    private JarContents() {
+    }
+
+    /**
+     * @return the names of the entries of the given jar, directories included.
+     */
+    static List<String> entryNames(File jar) throws IOException {
+        ZipFile zip = new ZipFile(jar);
+        try {
+            List<String> names = new ArrayList<String>(zip.size());
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries
+                    .hasMoreElements();) {
+                names.add(entries.nextElement().getName());
+            }
+            return names;
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * @return true if the given entry is a signature file of the jar.
+     */
+    static boolean isSignatureFile(String entryName) {
+        if (!entryName.startsWith(META_INF)) {
+            return false;
+        }
+        String name = entryName.substring(META_INF.length());
+        return name.indexOf('/') == -1
+                && (name.endsWith(".SF") || name.endsWith(".RSA")
+                        || name.endsWith(".DSA") || name.endsWith(".EC")
+                        || name.startsWith("SIG-"));
+    }
+
+    /**
+     * @return the binary name of the class stored in the given entry, or null
+     *         if the entry is not a class.
+     */
+    static String className(String entryName) {
+        if (!entryName.endsWith(CLASS_SUFFIX) || entryName.startsWith(META_INF)) {
+            return null;
+        }
+        return entryName.substring(0, entryName.length() - CLASS_SUFFIX.length())
+                .replace('/', '.');
+    }
+
+    /**
+     * @return the package of the given class, the empty string for the default
+     *         package.
+     */
+    static String packageName(String className) {
+        int lastDot = className.lastIndexOf('.');
+        return lastDot == -1 ? "" : className.substring(0, lastDot);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Writes the JarDiff between two versions of a jar, as defined by the jnlp
+ * version-based download protocol. A JarDiff is a jar holding the new and
+ * changed entries, and a <code>META-INF/INDEX.JD</code> entry listing the
+ * entries to remove from the old jar and the entries to move (rename)
+ * inside it. Unlisted entries of the old jar are kept as they are.
+ */
+final class JarDiff {
+
+    static final String INDEX_NAME = "META-INF/INDEX.JD";
+
+    private static final String VERSION_HEADER = "version 1.0";
+    private static final String REMOVE_COMMAND = "remove";
+    private static final String MOVE_COMMAND = "move";
+    private static final String ENCODING = "UTF-8";
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private JarDiff() {
+    }
+
+    /**
+     * Write the JarDiff from the old jar to the new jar.
+     * 
+     * @param oldJar
+     *            the previous version of the jar.
+     * @param newJar
+     *            the current version of the jar.
+     * @param diff
+     *            the JarDiff file to write.
+     */
+    static void create(File oldJar, File newJar, File diff) throws IOException {
+        ZipFile oldZip = new ZipFile(oldJar);
+        try {
+            ZipFile newZip = new ZipFile(newJar);
+            try {
+                create(oldZip, newZip, diff);
+            } finally {
+                newZip.close();
+            }
+        } finally {
+            oldZip.close();
+        }
+    }
+
+    private static void create(ZipFile oldZip, ZipFile newZip, File diff)
+            throws IOException {
+        Map<String, ZipEntry> oldEntries = new LinkedHashMap<String, ZipEntry>();
+        Map<String, List<ZipEntry>> oldEntriesByContent = new LinkedHashMap<String, List<ZipEntry>>();
+        for (Enumeration<? extends ZipEntry> entries = oldZip.entries(); entries
+                .hasMoreElements();) {
+            ZipEntry entry = entries.nextElement();
+            oldEntries.put(entry.getName(), entry);
+            String key = contentKey(entry);
+            List<ZipEntry> sameContent = oldEntriesByContent.get(key);
+            if (sameContent == null) {
+                sameContent = new ArrayList<ZipEntry>();
+                oldEntriesByContent.put(key, sameContent);
+            }
+            sameContent.add(entry);
+        }
+        Set<String> newNames = new HashSet<String>();
+        for (Enumeration<? extends ZipEntry> entries = newZip.entries(); entries
+                .hasMoreElements();) {
+            newNames.add(entries.nextElement().getName());
+        }
+
+        List<ZipEntry> changed = new ArrayList<ZipEntry>();
+        Map<String, String> moves = new LinkedHashMap<String, String>();
+        Set<String> moved = new HashSet<String>();
+        for (Enumeration<? extends ZipEntry> entries = newZip.entries(); entries
+                .hasMoreElements();) {
+            ZipEntry entry = entries.nextElement();
+            ZipEntry oldEntry = oldEntries.get(entry.getName());
+            if (oldEntry != null && sameContent(oldZip, oldEntry, newZip, entry)) {
+                // kept as it is
+                continue;
+            }
+            ZipEntry source = findMoveSource(oldZip, oldEntriesByContent,
+                    newNames, moved, newZip, entry);
+            if (source != null) {
+                moves.put(source.getName(), entry.getName());
+                moved.add(source.getName());
+            } else {
+                changed.add(entry);
+            }
+        }
+
+        StringBuilder index = new StringBuilder(VERSION_HEADER).append('\n');
+        for (String oldName : oldEntries.keySet()) {
+            if (!newNames.contains(oldName) && !moved.contains(oldName)) {
+                index.append(REMOVE_COMMAND).append(' ').append(escape(oldName))
+                        .append('\n');
+            }
+        }
+        for (Map.Entry<String, String> move : moves.entrySet()) {
+            index.append(MOVE_COMMAND).append(' ').append(escape(move.getKey()))
+                    .append(' ').append(escape(move.getValue())).append('\n');
+        }
+
+        ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(
+                new FileOutputStream(diff)));
+        try {
+            output.putNextEntry(new ZipEntry(INDEX_NAME));
+            output.write(index.toString().getBytes(ENCODING));
+            output.closeEntry();
+            for (ZipEntry entry : changed) {
+                ZipEntry copy = new ZipEntry(entry.getName());
+                copy.setTime(entry.getTime());
+                output.putNextEntry(copy);
+                InputStream input = newZip.getInputStream(entry);
+                try {
+                    copy(input, output);
+                } finally {
+                    FileUtils.close(input);
+                }
+                output.closeEntry();
+            }
+        } finally {
+            FileUtils.close(output);
+        }
+    }
+
+    /**
+     * An old entry can be moved only if its name is not used anymore by the new
+     * jar, and if it has not already been moved.
+     */
+    private static ZipEntry findMoveSource(ZipFile oldZip,
+            Map<String, List<ZipEntry>> oldEntriesByContent,
+            Set<String> newNames, Set<String> moved, ZipFile newZip,
+            ZipEntry entry) throws IOException {
+        List<ZipEntry> candidates = oldEntriesByContent.get(contentKey(entry));
+        if (candidates == null) {
+            return null;
+        }
+        for (ZipEntry candidate : candidates) {
+            if (!newNames.contains(candidate.getName())
+                    && !moved.contains(candidate.getName())
+                    && sameContent(oldZip, candidate, newZip, entry)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static String contentKey(ZipEntry entry) {
+        return entry.getSize() + ":" + entry.getCrc() + ":"
+                + entry.isDirectory();
+    }
+
+    /**
+     * Entries with the same size and checksum are compared byte per byte: an
+     * undetected checksum collision would corrupt the jar patched by the
+     * client.
+     */
+    private static boolean sameContent(ZipFile oldZip, ZipEntry oldEntry,
+            ZipFile newZip, ZipEntry newEntry) throws IOException {
+        if (oldEntry.isDirectory() != newEntry.isDirectory()
+                || oldEntry.getSize() != newEntry.getSize()
+                || oldEntry.getCrc() != newEntry.getCrc()) {
+            return false;
+        }
+        if (oldEntry.isDirectory()) {
+            return true;
+        }
+        InputStream oldInput = new BufferedInputStream(oldZip
+                .getInputStream(oldEntry));
+        try {
+            InputStream newInput = new BufferedInputStream(newZip
+                    .getInputStream(newEntry));
+            try {
+                int read;
+                while ((read = oldInput.read()) != -1) {
+                    if (read != newInput.read()) {
+                        return false;
+                    }
+                }
+                return newInput.read() == -1;
+            } finally {
+                FileUtils.close(newInput);
+            }
+        } finally {
+            FileUtils.close(oldInput);
+        }
+    }
+
+    private static String escape(String name) {
+        return name.replace(" ", "\\ ");
+    }
+
+    private static void copy(InputStream input, OutputStream output)
+            throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+    }
+}
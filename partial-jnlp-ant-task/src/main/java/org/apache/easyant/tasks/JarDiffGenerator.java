@@ -0,0 +1,225 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Publishes the versioned jars of a release, and the JarDiffs from the jars of
+ * a previous release to the current ones, in parallel, in the layout of the
+ * version-based download protocol. Versions are derived from the content
+ * digest of the jars, and the jars are identified by their path relative to
+ * the directory of their fileset: the version <i>v</i> of
+ * <code>dir/name.jar</code> is published as
+ * <code>dir/name__V<i>v</i>.jar</code>, and the JarDiff from the version
+ * <i>old</i> to the version <i>new</i> as
+ * <code>dir/name__V<i>old</i>__V<i>new</i>.jardiff</code>.
+ */
+final class JarDiffGenerator {
+
+    private static final int VERSION_LENGTH = 16;
+    private static final String JAR_EXTENSION = ".jar";
+    private static final String JARDIFF_EXTENSION = ".jardiff";
+    private static final String VERSION_SEPARATOR = "__V";
+
+    private final File outputDir;
+
+    private final ResourceDigester digester;
+
+    private final Map<String, File> previousJars = new HashMap<String, File>();
+
+    /**
+     * @param outputDir
+     *            the directory the versioned jars and the JarDiffs are
+     *            published in.
+     * @param previousRelease
+     *            the directory holding the jars of the previous release, looked
+     *            up by relative path, null to publish the versioned jars only.
+     * @param digester
+     *            the digester the versions are derived from.
+     */
+    JarDiffGenerator(File outputDir, File previousRelease,
+            ResourceDigester digester) {
+        this.outputDir = outputDir;
+        this.digester = digester;
+        if (previousRelease == null) {
+            return;
+        }
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(previousRelease);
+        scanner.setIncludes(new String[] {"**/*" + JAR_EXTENSION});
+        scanner.scan();
+        for (String fileName : scanner.getIncludedFiles()) {
+            previousJars.put(fileName.replace(File.separatorChar, '/'),
+                    new File(previousRelease, fileName));
+        }
+    }
+
+    /**
+     * @return the version of a jar given its content digest.
+     */
+    static String version(String digest) {
+        return digest.substring(0, Math.min(VERSION_LENGTH, digest.length()));
+    }
+
+    /**
+     * @return the relative path of the given version of a jar, or of the
+     *         JarDiff between two versions if several are given.
+     */
+    static String versionedPath(String path, String... versions) {
+        String basePath = path;
+        if (basePath.endsWith(JAR_EXTENSION)) {
+            basePath = basePath.substring(0, basePath.length()
+                    - JAR_EXTENSION.length());
+        }
+        StringBuilder versionedPath = new StringBuilder(basePath);
+        for (String version : versions) {
+            versionedPath.append(VERSION_SEPARATOR).append(version);
+        }
+        return versionedPath.append(versions.length > 1 ? JARDIFF_EXTENSION
+                : JAR_EXTENSION).toString();
+    }
+
+    /**
+     * Publish the versioned jars, and the JarDiffs of the ones that changed
+     * since the previous release.
+     * 
+     * @param jars
+     *            the jars to publish, with their path relative to the
+     *            directory of their fileset.
+     * @return the sizes of the changed jars and of their JarDiffs.
+     */
+    Report generate(Map<File, String> jars, int threads) {
+        List<Callable<long[]>> jobs = new ArrayList<Callable<long[]>>();
+        for (final Map.Entry<File, String> jar : jars.entrySet()) {
+            final File previousJar = previousJars.get(jar.getValue());
+            jobs.add(new Callable<long[]>() {
+                public long[] call() throws IOException {
+                    return generate(previousJar, jar.getKey(), jar.getValue());
+                }
+            });
+        }
+        Report report = new Report();
+        for (long[] sizes : Workers.invokeAll(jobs, threads)) {
+            report.publishedJars++;
+            if (sizes != null) {
+                report.changedJars++;
+                report.fullBytes += sizes[0];
+                report.diffBytes += sizes[1];
+            }
+        }
+        return report;
+    }
+
+    /**
+     * @return the size of the new jar and the size of its JarDiff, or null if
+     *         the jar is new or didn't change.
+     */
+    private long[] generate(File previousJar, File jar, String path)
+            throws IOException {
+        String currentVersion = version(digester.digest(jar));
+        // versions are content based, existing files are up to date
+        File versionedJar = new File(outputDir, versionedPath(path,
+                currentVersion));
+        if (!versionedJar.isFile()) {
+            write(versionedJar, jar, null);
+        }
+        if (previousJar == null) {
+            return null;
+        }
+        String previousVersion = version(digester.digest(previousJar));
+        if (previousVersion.equals(currentVersion)) {
+            return null;
+        }
+        File diff = new File(outputDir, versionedPath(path, previousVersion,
+                currentVersion));
+        if (!diff.isFile()) {
+            write(diff, jar, previousJar);
+        }
+        // a server sends the full jar when the JarDiff is not smaller
+        return new long[] {jar.length(), Math.min(diff.length(), jar.length())};
+    }
+
+    /**
+     * Write a copy of the jar, or its JarDiff from a previous jar if any.
+     */
+    private static void write(File target, File jar, File previousJar)
+            throws IOException {
+        File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("unable to create " + parent);
+        }
+        File tmpFile = FileReplacer.createTempFile(target);
+        try {
+            if (previousJar == null) {
+                FileUtils.getFileUtils().copyFile(jar, tmpFile, null, true);
+            } else {
+                JarDiff.create(previousJar, jar, tmpFile);
+            }
+            FileReplacer.replace(tmpFile, target);
+        } finally {
+            FileUtils.delete(tmpFile);
+        }
+    }
+
+    /**
+     * Sizes of the changed jars, compared to the sizes of their JarDiffs.
+     */
+    static final class Report {
+        private int publishedJars;
+        private int changedJars;
+        private long fullBytes;
+        private long diffBytes;
+
+        int getPublishedJars() {
+            return publishedJars;
+        }
+
+        int getChangedJars() {
+            return changedJars;
+        }
+
+        long getFullBytes() {
+            return fullBytes;
+        }
+
+        long getDiffBytes() {
+            return diffBytes;
+        }
+
+        @Override
+        public String toString() {
+            long saved = fullBytes - diffBytes;
+            return publishedJars + " versioned jars, " + changedJars
+                    + " changed jars, " + diffBytes
+                    + " bytes to download with JarDiffs instead of " + fullBytes
+                    + " (" + saved + " bytes saved"
+                    + (fullBytes > 0 ? ", " + (saved * 100 / fullBytes) + "%" : "")
+                    + ")";
+        }
+    }
+}
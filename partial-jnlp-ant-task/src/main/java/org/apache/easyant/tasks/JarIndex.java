@@ -0,0 +1,215 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Writes a jar index (META-INF/INDEX.LIST) into a main jar, listing the
+ * packages of the main jar and of the jars it depends on, so that the class
+ * loader of the client goes straight to the jar holding a class instead of
+ * probing (and downloading) them one after another.
+ */
+final class JarIndex {
+
+    static final String INDEX_NAME = "META-INF/INDEX.LIST";
+
+    private static final String VERSION_HEADER = "JarIndex-Version: 1.0";
+    private static final String META_INF = "META-INF/";
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    private static final String LINE_SEPARATOR = "\n";
+
+    private JarIndex() {
+    }
+
+    /**
+     * Build the index of the given jars, reading their central directories in
+     * parallel.
+     * 
+     * @param jars
+     *            the jars to index, main jar first, each one mapped to its path
+     *            relative to the main jar.
+     * @param threads
+     *            the maximum number of jars read in parallel.
+     * @return the content of the index.
+     */
+    static byte[] create(Map<File, String> jars, int threads) {
+        List<Callable<Set<String>>> reads = new ArrayList<Callable<Set<String>>>();
+        for (final File jar : jars.keySet()) {
+            reads.add(new Callable<Set<String>>() {
+                public Set<String> call() throws IOException {
+                    return indexedNames(JarContents.entryNames(jar));
+                }
+            });
+        }
+        List<Set<String>> names = Workers.invokeAll(reads, threads);
+
+        StringBuilder index = new StringBuilder(VERSION_HEADER).append(
+                LINE_SEPARATOR).append(LINE_SEPARATOR);
+        int i = 0;
+        for (String jarPath : jars.values()) {
+            index.append(jarPath).append(LINE_SEPARATOR);
+            for (String name : names.get(i++)) {
+                index.append(name).append(LINE_SEPARATOR);
+            }
+            index.append(LINE_SEPARATOR);
+        }
+        return index.toString().getBytes(RawZipFile.UTF_8);
+    }
+
+    /**
+     * @return the names a jar is indexed by: the directories of its entries,
+     *         and the entries at its root.
+     */
+    static Set<String> indexedNames(List<String> entryNames) {
+        Set<String> names = new LinkedHashSet<String>();
+        for (String entryName : entryNames) {
+            if (entryName.startsWith(META_INF)) {
+                continue;
+            }
+            int lastSlash = entryName.lastIndexOf('/');
+            if (lastSlash > 0) {
+                names.add(entryName.substring(0, lastSlash));
+            } else if (lastSlash == -1) {
+                names.add(entryName);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Write the index into the main jar, replacing the existing one. The other
+     * entries are copied without being inflated, the index right after the
+     * manifest.
+     * 
+     * @return false if the main jar already holds the same index, and was
+     *         left untouched.
+     * @throws IOException
+     *             if the main jar is signed, as modifying it would break its
+     *             signature.
+     */
+    static boolean write(File mainJar, byte[] index) throws IOException {
+        if (Arrays.equals(index, readIndex(mainJar))) {
+            return false;
+        }
+        File tmpFile = FileReplacer.createTempFile(mainJar);
+        try {
+            RawZipFile source = new RawZipFile(mainJar);
+            try {
+                for (RawZipFile.Entry entry : source.getEntries()) {
+                    if (JarContents.isSignatureFile(entry.getName())) {
+                        throw new IOException("the jar is signed, its index must"
+                                + " be written before it is signed");
+                    }
+                }
+                RawZipWriter writer = new RawZipWriter(tmpFile);
+                try {
+                    List<RawZipFile.Entry> entries = source.getEntries();
+                    int dosTime = entries.isEmpty() ? 0 : entries.get(0)
+                            .getDosTime();
+                    for (RawZipFile.Entry entry : entries) {
+                        if (entry.getName().equals(META_INF)
+                                || entry.getName().equals(MANIFEST_NAME)) {
+                            writer.copy(source, entry);
+                        }
+                    }
+                    writer.add(INDEX_NAME, index, dosTime);
+                    for (RawZipFile.Entry entry : entries) {
+                        if (!writer.contains(entry.getName())) {
+                            writer.copy(source, entry);
+                        }
+                    }
+                } finally {
+                    writer.close();
+                }
+            } finally {
+                source.close();
+            }
+            FileReplacer.replace(tmpFile, mainJar);
+        } finally {
+            FileUtils.delete(tmpFile);
+        }
+        return true;
+    }
+
+    /**
+     * @return the content of the index of the given jar, null if it has none.
+     */
+    private static byte[] readIndex(File jar) throws IOException {
+        ZipFile zip = new ZipFile(jar);
+        try {
+            ZipEntry entry = zip.getEntry(INDEX_NAME);
+            if (entry == null) {
+                return null;
+            }
+            InputStream input = zip.getInputStream(entry);
+            try {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+                return content.toByteArray();
+            } finally {
+                FileUtils.close(input);
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * @param flat
+     *            true if the jars are all published in the same directory.
+     * @return the resources to index with a main jar, mapped to their path
+     *         relative to it: the ones in the directory of the main jar or
+     *         below by their relative path, the others by their name.
+     */
+    static Map<File, String> relativePaths(File mainJar,
+            Iterable<File> resources, boolean flat) {
+        Map<File, String> paths = new LinkedHashMap<File, String>();
+        paths.put(mainJar, mainJar.getName());
+        String mainDir = mainJar.getAbsoluteFile().getParent() + File.separator;
+        for (File resource : resources) {
+            String path = resource.getAbsolutePath();
+            if (!flat && path.startsWith(mainDir)) {
+                path = path.substring(mainDir.length());
+            } else {
+                path = resource.getName();
+            }
+            paths.put(resource, path.replace(File.separatorChar, '/'));
+        }
+        return paths;
+    }
+}
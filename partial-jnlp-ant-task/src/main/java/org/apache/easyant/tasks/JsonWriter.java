@@ -0,0 +1,170 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A minimal streaming JSON writer, indenting nested values, for the reports
+ * of the task. Names and values are written in the order they are given.
+ */
+final class JsonWriter {
+
+    private static final String INDENT = "  ";
+
+    private final Writer writer;
+
+    /** for each open object or array, true while it is still empty. */
+    private final List<Boolean> empty = new ArrayList<Boolean>();
+
+    private boolean afterName = false;
+
+    JsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        return begin('{');
+    }
+
+    JsonWriter endObject() throws IOException {
+        return end('}');
+    }
+
+    JsonWriter beginArray() throws IOException {
+        return begin('[');
+    }
+
+    JsonWriter endArray() throws IOException {
+        return end(']');
+    }
+
+    JsonWriter name(String name) throws IOException {
+        separate();
+        string(name);
+        writer.write(": ");
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            writer.write("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        separate();
+        writer.write(String.valueOf(value));
+        return this;
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        separate();
+        writer.write(String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Write the end of the last line, the writer is not closed.
+     */
+    void flush() throws IOException {
+        writer.write('\n');
+        writer.flush();
+    }
+
+    private JsonWriter begin(char bracket) throws IOException {
+        separate();
+        writer.write(bracket);
+        empty.add(Boolean.TRUE);
+        return this;
+    }
+
+    private JsonWriter end(char bracket) throws IOException {
+        boolean wasEmpty = empty.remove(empty.size() - 1).booleanValue();
+        if (!wasEmpty) {
+            newLine();
+        }
+        writer.write(bracket);
+        return this;
+    }
+
+    /**
+     * Write the separator expected before a name or a value.
+     */
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (empty.isEmpty()) {
+            return;
+        }
+        int last = empty.size() - 1;
+        if (!empty.get(last).booleanValue()) {
+            writer.write(',');
+        }
+        empty.set(last, Boolean.FALSE);
+        newLine();
+    }
+
+    private void newLine() throws IOException {
+        writer.write('\n');
+        for (int i = 0; i < empty.size(); i++) {
+            writer.write(INDENT);
+        }
+    }
+
+    private void string(String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    writer.write(String.format("\\u%04x", Integer.valueOf(c)));
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+        writer.write('"');
+    }
+}
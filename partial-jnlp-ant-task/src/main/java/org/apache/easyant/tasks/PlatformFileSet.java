@@ -0,0 +1,73 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * A fileset whose jars are only needed on some platforms. They are written in
+ * their own resources part, restricted to the given os and arch, so each
+ * client downloads only the jars of its own platform.
+ * 
+ * <pre>
+ * &lt;platformfileset dir="lib/natives/linux-x86_64" os="Linux" arch="amd64" native="true"/&gt;
+ * &lt;platformfileset dir="lib/natives/windows-x86" os="Windows" arch="x86" native="true"/&gt;
+ * </pre>
+ */
+public class PlatformFileSet extends FileSet {
+
+    private String os;
+    private String arch;
+    private boolean nativeLibraries = false;
+
+    public String getOs() {
+        return os;
+    }
+
+    /**
+     * Set the os of the resources part, as the os.name prefix the jnlp client
+     * matches against.
+     */
+    public void setOs(String os) {
+        this.os = os;
+    }
+
+    public String getArch() {
+        return arch;
+    }
+
+    /**
+     * Set the arch of the resources part, as the os.arch prefix the jnlp
+     * client matches against.
+     */
+    public void setArch(String arch) {
+        this.arch = arch;
+    }
+
+    public boolean isNative() {
+        return nativeLibraries;
+    }
+
+    /**
+     * Set to true if the jars hold native libraries, to write them as
+     * nativelib elements instead of jar ones. Default is false.
+     */
+    public void setNative(boolean nativeLibraries) {
+        this.nativeLibraries = nativeLibraries;
+    }
+}
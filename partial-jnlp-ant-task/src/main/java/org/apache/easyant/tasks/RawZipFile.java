@@ -0,0 +1,212 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A zip file read at the level of its records: the central directory is
+ * parsed, and each entry is kept as the raw bytes of its local part (header,
+ * compressed data and data descriptor) so it can be copied to another zip
+ * file by a {@link RawZipWriter} without being inflated. Zip64 files are not
+ * supported.
+ */
+final class RawZipFile implements Closeable {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final long ZIP64_MARKER = 0xffffffffL;
+
+    private final File file;
+
+    private final RandomAccessFile input;
+
+    private final List<Entry> entries;
+
+    RawZipFile(File file) throws IOException {
+        this.file = file;
+        this.input = new RandomAccessFile(file, "r");
+        try {
+            this.entries = readCentralDirectory();
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        } catch (RuntimeException e) {
+            input.close();
+            throw new IOException(file + " is not a valid zip file", e);
+        }
+    }
+
+    /**
+     * @return the entries, in the order of the central directory.
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    FileChannel getChannel() {
+        return input.getChannel();
+    }
+
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        FileChannel channel = input.getChannel();
+        long length = channel.size();
+        int tailSize = (int) Math.min(length, END_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(channel, length - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new IOException(file + " is not a valid zip file");
+        }
+        int count = tail.getShort(end + 10) & 0xffff;
+        long centralSize = tail.getInt(end + 12) & ZIP64_MARKER;
+        long centralOffset = tail.getInt(end + 16) & ZIP64_MARKER;
+        if (count == 0xffff || centralSize == ZIP64_MARKER
+                || centralOffset == ZIP64_MARKER) {
+            throw new IOException("zip64 files are not supported: " + file);
+        }
+
+        ByteBuffer central = read(channel, centralOffset, (int) centralSize);
+        List<Entry> result = new ArrayList<Entry>(count);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (central.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new IOException(file + " has a corrupted central directory");
+            }
+            int nameLength = central.getShort(position + 28) & 0xffff;
+            int extraLength = central.getShort(position + 30) & 0xffff;
+            int commentLength = central.getShort(position + 32) & 0xffff;
+            int recordLength = CENTRAL_SIZE + nameLength + extraLength
+                    + commentLength;
+            byte[] record = new byte[recordLength];
+            central.position(position);
+            central.get(record);
+            String name = new String(record, CENTRAL_SIZE, nameLength, UTF_8);
+            result.add(new Entry(name, record));
+            position += recordLength;
+        }
+
+        // the local part of an entry ends where the next one starts
+        List<Entry> byOffset = new ArrayList<Entry>(result);
+        Collections.sort(byOffset, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                return Long.valueOf(e1.getLocalOffset()).compareTo(
+                        Long.valueOf(e2.getLocalOffset()));
+            }
+        });
+        for (int i = 0; i < byOffset.size(); i++) {
+            long next = i + 1 < byOffset.size() ? byOffset.get(i + 1)
+                    .getLocalOffset() : centralOffset;
+            Entry entry = byOffset.get(i);
+            entry.localLength = next - entry.getLocalOffset();
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * An entry of the zip file, as its central directory record.
+     */
+    static final class Entry {
+
+        private final String name;
+
+        private final byte[] centralRecord;
+
+        private long localLength;
+
+        private Entry(String name, byte[] centralRecord) {
+            this.name = name;
+            this.centralRecord = centralRecord;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /**
+         * @return the last modification time, in the MS-DOS format of zip
+         *         files.
+         */
+        int getDosTime() {
+            return centralRecord().getInt(12);
+        }
+
+        long getLocalOffset() {
+            return centralRecord().getInt(42) & ZIP64_MARKER;
+        }
+
+        /**
+         * @return the size of the local part of the entry.
+         */
+        long getLocalLength() {
+            return localLength;
+        }
+
+        /**
+         * @return a copy of the central directory record of the entry.
+         */
+        byte[] getCentralRecord() {
+            return centralRecord.clone();
+        }
+
+        private ByteBuffer centralRecord() {
+            return ByteBuffer.wrap(centralRecord).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Writes a zip file made of entries copied as they are from other zip files,
+ * with their compressed data, and of new entries. Copied entries are never
+ * inflated, so copying a jar costs about as much as copying a file.
+ */
+final class RawZipWriter implements Closeable {
+
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_SIZE = 30;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final short VERSION = 20;
+    private static final short UTF_8_FLAG = 0x0800;
+    private static final short DEFLATED = 8;
+    private static final int MAX_ENTRIES = 0xffff;
+    private static final long MAX_OFFSET = 0xffffffffL;
+
+    private final FileOutputStream output;
+
+    private final FileChannel channel;
+
+    private final List<byte[]> centralRecords = new ArrayList<byte[]>();
+
+    private final Set<String> names = new HashSet<String>();
+
+    private long offset = 0;
+
+    RawZipWriter(File file) throws IOException {
+        this.output = new FileOutputStream(file);
+        this.channel = output.getChannel();
+    }
+
+    /**
+     * @return true if an entry of the given name has already been written.
+     */
+    boolean contains(String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * Copy an entry of a zip file, without inflating it.
+     */
+    void copy(RawZipFile source, RawZipFile.Entry entry) throws IOException {
+        checkNewEntry(entry.getName());
+        FileChannel in = source.getChannel();
+        long position = entry.getLocalOffset();
+        long end = position + entry.getLocalLength();
+        while (position < end) {
+            position += in.transferTo(position, end - position, channel);
+        }
+        ByteBuffer record = ByteBuffer.wrap(entry.getCentralRecord()).order(
+                ByteOrder.LITTLE_ENDIAN);
+        record.putInt(42, (int) offset);
+        centralRecords.add(record.array());
+        offset += entry.getLocalLength();
+    }
+
+    /**
+     * Write a new entry, deflated.
+     * 
+     * @param dosTime
+     *            the last modification time of the entry, in the MS-DOS format
+     *            of zip files.
+     */
+    void add(String name, byte[] content, int dosTime) throws IOException {
+        checkNewEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        byte[] data = deflate(content);
+        byte[] nameBytes = name.getBytes(RawZipFile.UTF_8);
+
+        ByteBuffer local = ByteBuffer.allocate(LOCAL_SIZE + nameBytes.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(LOCAL_SIGNATURE).putShort(VERSION).putShort(UTF_8_FLAG)
+                .putShort(DEFLATED).putInt(dosTime).putInt((int) crc.getValue())
+                .putInt(data.length).putInt(content.length)
+                .putShort((short) nameBytes.length).putShort((short) 0)
+                .put(nameBytes);
+        local.flip();
+
+        ByteBuffer central = ByteBuffer.allocate(CENTRAL_SIZE + nameBytes.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        central.putInt(CENTRAL_SIGNATURE).putShort(VERSION).putShort(VERSION)
+                .putShort(UTF_8_FLAG).putShort(DEFLATED).putInt(dosTime)
+                .putInt((int) crc.getValue()).putInt(data.length)
+                .putInt(content.length).putShort((short) nameBytes.length)
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0).putInt(0).putInt((int) offset)
+                .put(nameBytes);
+        centralRecords.add(central.array());
+
+        write(local);
+        write(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Write the central directory and close the file.
+     */
+    public void close() throws IOException {
+        try {
+            if (centralRecords.size() > MAX_ENTRIES || offset > MAX_OFFSET) {
+                throw new IOException("zip64 files are not supported");
+            }
+            long centralOffset = offset;
+            for (byte[] record : centralRecords) {
+                write(ByteBuffer.wrap(record));
+            }
+            ByteBuffer end = ByteBuffer.allocate(END_SIZE).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_SIGNATURE).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) centralRecords.size())
+                    .putShort((short) centralRecords.size())
+                    .putInt((int) (offset - centralOffset))
+                    .putInt((int) centralOffset).putShort((short) 0);
+            end.flip();
+            write(end);
+        } finally {
+            FileUtils.close(output);
+        }
+    }
+
+    private void checkNewEntry(String name) throws IOException {
+        if (!names.add(name)) {
+            throw new IOException("duplicate zip entry: " + name);
+        }
+        if (offset > MAX_OFFSET) {
+            throw new IOException("zip64 files are not supported");
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer);
+        }
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream data = new ByteArrayOutputStream(content.length / 2 + 16);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                data.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return data.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
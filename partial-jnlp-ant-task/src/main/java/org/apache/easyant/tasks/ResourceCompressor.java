@@ -0,0 +1,193 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Writes precompressed variants of resources into an output directory, laid
+ * out like the resources, so a static web server can send them with a
+ * <code>Content-Encoding</code> without compressing them on every request.
+ * Variants newer than their resource are left as they are.
+ */
+final class ResourceCompressor {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<Codec> codecs;
+
+    private final File outputDir;
+
+    /**
+     * @param codecs
+     *            the codecs to compress with.
+     * @param outputDir
+     *            the directory the variants are written in.
+     */
+    ResourceCompressor(List<Codec> codecs, File outputDir) {
+        this.codecs = codecs;
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * @return the codecs named in the given comma separated list.
+     * @throws BuildException
+     *             if a codec is unknown.
+     */
+    static List<Codec> parseCodecs(String names) throws BuildException {
+        List<Codec> codecs = new ArrayList<Codec>();
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.length() == 0) {
+                continue;
+            }
+            try {
+                codecs.add(Codec.valueOf(name.toUpperCase(Locale.ENGLISH)));
+            } catch (IllegalArgumentException e) {
+                throw new BuildException("unknown compression codec " + name
+                        + ", supported codecs are gzip and deflate");
+            }
+        }
+        return codecs;
+    }
+
+    /**
+     * Compress the given files with every codec, in parallel.
+     * 
+     * @param files
+     *            the files to compress, with the path of their variants
+     *            relative to the output directory, without the extension of
+     *            the codec.
+     * @return the number of variants written, up to date variants excluded.
+     */
+    int compressAll(Map<File, String> files, int threads) {
+        List<Callable<Boolean>> jobs = new ArrayList<Callable<Boolean>>();
+        for (final Map.Entry<File, String> file : files.entrySet()) {
+            for (final Codec codec : codecs) {
+                jobs.add(new Callable<Boolean>() {
+                    public Boolean call() throws IOException {
+                        return Boolean.valueOf(compress(file.getKey(), new File(
+                                outputDir, file.getValue() + codec.getExtension()),
+                                codec));
+                    }
+                });
+            }
+        }
+        int written = 0;
+        for (Boolean compressed : Workers.invokeAll(jobs, threads)) {
+            if (compressed.booleanValue()) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return false if the variant was already up to date.
+     */
+    private boolean compress(File file, File variant, Codec codec)
+            throws IOException {
+        if (variant.isFile() && variant.lastModified() >= file.lastModified()) {
+            return false;
+        }
+        File parent = variant.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("unable to create " + parent);
+        }
+        File tmpFile = FileReplacer.createTempFile(variant);
+        try {
+            InputStream input = new FileInputStream(file);
+            try {
+                OutputStream output = codec.open(new BufferedOutputStream(
+                        new FileOutputStream(tmpFile)));
+                try {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = input.read(buffer)) != -1) {
+                        output.write(buffer, 0, read);
+                    }
+                } finally {
+                    FileUtils.close(output);
+                }
+            } finally {
+                FileUtils.close(input);
+            }
+            FileReplacer.replace(tmpFile, variant);
+        } finally {
+            FileUtils.delete(tmpFile);
+        }
+        return true;
+    }
+
+    /**
+     * The supported compression codecs, named after their
+     * <code>Content-Encoding</code>.
+     */
+    enum Codec {
+        GZIP(".gz") {
+            OutputStream open(OutputStream output) throws IOException {
+                return new GZIPOutputStream(output, BUFFER_SIZE) {
+                    {
+                        def.setLevel(Deflater.BEST_COMPRESSION);
+                    }
+                };
+            }
+        },
+        DEFLATE(".deflate") {
+            OutputStream open(OutputStream output) {
+                return new DeflaterOutputStream(output, new Deflater(
+                        Deflater.BEST_COMPRESSION), BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        def.end();
+                    }
+                };
+            }
+        };
+
+        private final String extension;
+
+        private Codec(String extension) {
+            this.extension = extension;
+        }
+
+        String getExtension() {
+            return extension;
+        }
+
+        abstract OutputStream open(OutputStream output) throws IOException;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Computes the digests of resources in parallel. Digests are cached by path,
+ * size and last modification date, optionally in a persistent cache file, so
+ * unchanged resources are never digested twice.
+ */
+final class ResourceDigester {
+
+    private static final char SEPARATOR = ':';
+    private static final String ALGORITHM_KEY = "algorithm";
+
+    private final String algorithm;
+
+    private final File cacheFile;
+
+    private final ConcurrentMap<String, String> cache = new ConcurrentHashMap<String, String>();
+
+    private volatile boolean cacheModified = false;
+
+    /**
+     * @param algorithm
+     *            the digest algorithm.
+     * @param cacheFile
+     *            the file the cache is loaded from and stored to, null for an
+     *            in memory cache only.
+     */
+    ResourceDigester(String algorithm, File cacheFile) throws IOException {
+        this.algorithm = algorithm;
+        this.cacheFile = cacheFile;
+        if (cacheFile != null && cacheFile.isFile()) {
+            Properties stored = new Properties();
+            InputStream input = new FileInputStream(cacheFile);
+            try {
+                stored.load(input);
+            } finally {
+                FileUtils.close(input);
+            }
+            // a cache computed with another algorithm is useless
+            if (algorithm.equals(stored.remove(ALGORITHM_KEY))) {
+                for (String path : stored.stringPropertyNames()) {
+                    cache.put(path, stored.getProperty(path));
+                }
+            }
+        }
+    }
+
+    String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the hexadecimal digest of the given file.
+     */
+    String digest(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        String state = Long.toString(file.length()) + SEPARATOR
+                + file.lastModified() + SEPARATOR;
+        String cached = cache.get(key);
+        if (cached != null && cached.startsWith(state)) {
+            return cached.substring(state.length());
+        }
+        String digest = Digests.digest(file, algorithm);
+        cache.put(key, state + digest);
+        cacheModified = true;
+        return digest;
+    }
+
+    /**
+     * Digest the given files in parallel.
+     * 
+     * @return the digests indexed by file, in the order of the given files.
+     */
+    Map<File, String> digestAll(Collection<File> files, int threads) {
+        List<Callable<String>> jobs = new ArrayList<Callable<String>>(files.size());
+        for (final File file : files) {
+            jobs.add(new Callable<String>() {
+                public String call() throws IOException {
+                    return digest(file);
+                }
+            });
+        }
+        List<String> digests = Workers.invokeAll(jobs, threads);
+        Map<File, String> result = new LinkedHashMap<File, String>();
+        int i = 0;
+        for (File file : files) {
+            result.put(file, digests.get(i++));
+        }
+        return result;
+    }
+
+    /**
+     * Store the cache in the cache file, if any and if it changed.
+     */
+    void store() throws IOException {
+        if (cacheFile == null || !cacheModified) {
+            return;
+        }
+        Properties stored = new Properties();
+        stored.putAll(cache);
+        stored.setProperty(ALGORITHM_KEY, algorithm);
+        File tmpFile = FileReplacer.createTempFile(cacheFile);
+        try {
+            OutputStream output = new FileOutputStream(tmpFile);
+            try {
+                stored.store(output, "partial jnlp task digest cache, do not edit");
+            } finally {
+                FileUtils.close(output);
+            }
+            FileReplacer.replace(tmpFile, cacheFile);
+        } finally {
+            FileUtils.delete(tmpFile);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An element to write inside the resources part of a jnlp file (a jar entry
+ * for instance), independent of the way the jnlp file is rewritten.
+ */
+final class ResourceElement {
+
+    private final String name;
+
+    private final Map<String, String> attributes = new LinkedHashMap<String, String>();
+
+    private final Map<String, String> qualifiers = new LinkedHashMap<String, String>();
+
+    ResourceElement(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the attributes of the element, in the order they have been set.
+     */
+    Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    String getAttribute(String attributeName) {
+        return attributes.get(attributeName);
+    }
+
+    ResourceElement setAttribute(String attributeName, String value) {
+        attributes.put(attributeName, value);
+        return this;
+    }
+
+    /**
+     * @return the attributes of the resources part the element has to be
+     *         written in (os, arch), empty for the part applying to every
+     *         client.
+     */
+    Map<String, String> getQualifiers() {
+        return qualifiers;
+    }
+
+    ResourceElement setQualifier(String qualifierName, String value) {
+        if (value != null && value.length() > 0) {
+            qualifiers.put(qualifierName, value);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.Properties;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * A fingerprint of everything a jnlp file is generated from: the task
+ * settings and the path, size and last modification date (optionally the
+ * content digest) of every resource. It is stored in a sidecar file along
+ * with the size and date of the generated jnlp file, so a later execution
+ * can tell whether the jnlp file is up to date.
+ */
+final class ResourceFingerprint {
+
+    private static final String ENCODING = "UTF-8";
+    private static final String FINGERPRINT_KEY = "fingerprint";
+    private static final String JNLP_LENGTH_KEY = "jnlp.length";
+    private static final String JNLP_LAST_MODIFIED_KEY = "jnlp.lastmodified";
+
+    private final MessageDigest digest = Digests.newDigest(Digests.SHA_256);
+
+    private final ResourceDigester digester;
+
+    private String value = null;
+
+    /**
+     * @param digester
+     *            the digester used to fingerprint the content of the files,
+     *            null to fingerprint only their size and last modification
+     *            date.
+     */
+    ResourceFingerprint(ResourceDigester digester) {
+        this.digester = digester;
+    }
+
+    ResourceFingerprint add(String key, Object setting) {
+        update(key + "=" + setting);
+        return this;
+    }
+
+    ResourceFingerprint addFile(File file) throws IOException {
+        StringBuilder line = new StringBuilder(file.getAbsolutePath());
+        line.append('|').append(file.length());
+        line.append('|').append(file.lastModified());
+        if (digester != null) {
+            line.append('|').append(digester.digest(file));
+        }
+        update(line.toString());
+        return this;
+    }
+
+    private void update(String line) {
+        if (value != null) {
+            throw new IllegalStateException("the fingerprint is already computed");
+        }
+        try {
+            digest.update(line.getBytes(ENCODING));
+            digest.update((byte) '\n');
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    String getValue() {
+        if (value == null) {
+            value = Digests.toHex(digest.digest());
+        }
+        return value;
+    }
+
+    /**
+     * @return true if the fingerprint stored in the given file is this one and
+     *         the jnlp file has not changed since it has been stored.
+     */
+    boolean isUpToDate(File fingerprintFile, File jnlpFile) throws IOException {
+        if (!fingerprintFile.isFile() || !jnlpFile.isFile()) {
+            return false;
+        }
+        Properties stored = new Properties();
+        InputStream input = new FileInputStream(fingerprintFile);
+        try {
+            stored.load(input);
+        } finally {
+            FileUtils.close(input);
+        }
+        return getValue().equals(stored.getProperty(FINGERPRINT_KEY))
+                && String.valueOf(jnlpFile.length()).equals(
+                        stored.getProperty(JNLP_LENGTH_KEY))
+                && String.valueOf(jnlpFile.lastModified()).equals(
+                        stored.getProperty(JNLP_LAST_MODIFIED_KEY));
+    }
+
+    /**
+     * Store this fingerprint along with the current state of the jnlp file.
+     */
+    void store(File fingerprintFile, File jnlpFile) throws IOException {
+        Properties stored = new Properties();
+        stored.setProperty(FINGERPRINT_KEY, getValue());
+        stored.setProperty(JNLP_LENGTH_KEY, String.valueOf(jnlpFile.length()));
+        stored.setProperty(JNLP_LAST_MODIFIED_KEY, String.valueOf(jnlpFile
+                .lastModified()));
+        File tmpFile = FileReplacer.createTempFile(fingerprintFile);
+        try {
+            OutputStream output = new FileOutputStream(tmpFile);
+            try {
+                stored.store(output, "partial jnlp task fingerprint, do not edit");
+            } finally {
+                FileUtils.close(output);
+            }
+            FileReplacer.replace(tmpFile, fingerprintFile);
+        } finally {
+            FileUtils.delete(tmpFile);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * The files included by a list of filesets, each fileset being scanned only
+ * once, all of them concurrently. Files are indexed by absolute path, so a file included by several
+ * filesets is kept once, in the order of its first inclusion, and belongs to
+ * the first fileset including it.
+ */
+final class ResourceIndex {
+
+    private final Map<String, File> files = new LinkedHashMap<String, File>();
+
+    private final Map<String, FileSet> filesets = new HashMap<String, FileSet>();
+
+    private ResourceIndex() {
+    }
+
+    /**
+     * Scan the given filesets concurrently.
+     * 
+     * @param filesets
+     *            the filesets to scan.
+     * @param project
+     *            the project used to evaluate the filesets.
+     * @param threads
+     *            the maximum number of filesets scanned at once, when virtual
+     *            threads are not available.
+     * @return the index of all the included files, including the ones in sub
+     *         directories, in the order of the filesets whatever the order
+     *         the scans end in.
+     */
+    static ResourceIndex scan(List<FileSet> filesets, Project project,
+            int threads) {
+        return create(filesets, scanFiles(filesets, project, threads));
+    }
+
+    /**
+     * Scan the given filesets concurrently, each scan mostly waiting for the
+     * file system.
+     * 
+     * @return the files included by each fileset, sorted by relative path, in
+     *         the order of the filesets.
+     */
+    static List<List<File>> scanFiles(List<? extends FileSet> filesets,
+            final Project project, int threads) {
+        List<Callable<List<File>>> scans = new ArrayList<Callable<List<File>>>(
+                filesets.size());
+        for (final FileSet fileset : filesets) {
+            scans.add(new Callable<List<File>>() {
+                public List<File> call() {
+                    DirectoryScanner scanner = fileset.getDirectoryScanner(project);
+                    File basedir = scanner.getBasedir();
+                    String[] fileNames = scanner.getIncludedFiles();
+                    // only sorted since Ant 1.8, sorted here on every version
+                    // as the watch mode lists them this way
+                    Arrays.sort(fileNames);
+                    List<File> files = new ArrayList<File>(fileNames.length);
+                    for (String fileName : fileNames) {
+                        files.add(new File(basedir, fileName));
+                    }
+                    return files;
+                }
+            });
+        }
+        return Workers.invokeAllBlocking(scans, threads);
+    }
+
+    /**
+     * Index already scanned files.
+     * 
+     * @param filesets
+     *            the filesets the files have been included by.
+     * @param files
+     *            the files included by each fileset, in the order of the
+     *            filesets.
+     * @return the index of all the files.
+     */
+    static ResourceIndex create(List<? extends FileSet> filesets,
+            List<? extends Collection<File>> files) {
+        ResourceIndex index = new ResourceIndex();
+        for (int i = 0; i < filesets.size(); i++) {
+            for (File file : files.get(i)) {
+                index.add(file, filesets.get(i));
+            }
+        }
+        return index;
+    }
+
+    private void add(File file, FileSet fileset) {
+        String key = file.getAbsolutePath();
+        if (!files.containsKey(key)) {
+            files.put(key, file);
+            filesets.put(key, fileset);
+        }
+    }
+
+    /**
+     * Remove the files having the same content as a previous file of the
+     * index. Files are compared by size first, only files of the same size
+     * being digested.
+     * 
+     * @param digester
+     *            the digester used to compare files of the same size.
+     * @param threads
+     *            the maximum number of files digested in parallel.
+     * @return the removed files, each one mapped to the file it duplicates.
+     */
+    Map<File, File> deduplicate(ResourceDigester digester, int threads) {
+        Map<Long, List<File>> filesBySize = new LinkedHashMap<Long, List<File>>();
+        for (File file : files.values()) {
+            Long size = Long.valueOf(file.length());
+            List<File> sameSize = filesBySize.get(size);
+            if (sameSize == null) {
+                sameSize = new ArrayList<File>(1);
+                filesBySize.put(size, sameSize);
+            }
+            sameSize.add(file);
+        }
+        List<File> candidates = new ArrayList<File>();
+        for (List<File> sameSize : filesBySize.values()) {
+            if (sameSize.size() > 1) {
+                candidates.addAll(sameSize);
+            }
+        }
+        Map<File, File> duplicates = new LinkedHashMap<File, File>();
+        if (candidates.isEmpty()) {
+            return duplicates;
+        }
+        Map<String, File> filesByDigest = new HashMap<String, File>();
+        for (Map.Entry<File, String> digest : digester.digestAll(candidates,
+                threads).entrySet()) {
+            // the size is part of the key, in case of digest collision
+            String key = digest.getKey().length() + ":" + digest.getValue();
+            File original = filesByDigest.get(key);
+            if (original == null) {
+                filesByDigest.put(key, digest.getKey());
+            } else {
+                duplicates.put(digest.getKey(), original);
+            }
+        }
+        for (File duplicate : duplicates.keySet()) {
+            files.remove(duplicate.getAbsolutePath());
+            filesets.remove(duplicate.getAbsolutePath());
+        }
+        return duplicates;
+    }
+
+    /**
+     * Add files belonging to no fileset, after the ones already indexed.
+     */
+    void addAll(Collection<File> added) {
+        for (File file : added) {
+            add(file, null);
+        }
+    }
+
+    /**
+     * Replace some files by a single one, at the place of the first of them.
+     * 
+     * @param replaced
+     *            the files to remove.
+     * @param replacement
+     *            the file to add, belonging to no fileset.
+     */
+    void replace(Collection<File> replaced, File replacement) {
+        Set<String> keys = new HashSet<String>();
+        for (File file : replaced) {
+            keys.add(file.getAbsolutePath());
+        }
+        Map<String, File> previous = new LinkedHashMap<String, File>(files);
+        files.clear();
+        for (Map.Entry<String, File> entry : previous.entrySet()) {
+            if (!keys.contains(entry.getKey())) {
+                files.put(entry.getKey(), entry.getValue());
+            } else if (!files.containsKey(replacement.getAbsolutePath())) {
+                files.put(replacement.getAbsolutePath(), replacement);
+            }
+        }
+        for (String key : keys) {
+            filesets.remove(key);
+        }
+    }
+
+    /**
+     * @return the fileset the file has been included by, null if it is not in
+     *         the index.
+     */
+    FileSet getFileSet(File file) {
+        return filesets.get(file.getAbsolutePath());
+    }
+
+    boolean contains(File file) {
+        return files.containsKey(file.getAbsolutePath());
+    }
+
+    Collection<File> getFiles() {
+        return Collections.unmodifiableCollection(files.values());
+    }
+
+    int size() {
+        return files.size();
+    }
+}
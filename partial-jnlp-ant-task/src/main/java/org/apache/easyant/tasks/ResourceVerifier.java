@@ -0,0 +1,411 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.CodeSigner;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Verifies the signatures and the security attributes of the manifest
+ * (Permissions, Codebase) of jars in parallel, the way the jnlp client does
+ * at launch. Results are cached by content digest, optionally in a persistent
+ * cache file, so only the jars whose content changed are verified again.
+ */
+final class ResourceVerifier {
+
+    static final String PERMISSIONS_ATTRIBUTE = "Permissions";
+    static final String CODEBASE_ATTRIBUTE = "Codebase";
+
+    private static final String META_INF = "META-INF/";
+    private static final String ALGORITHM_KEY = "algorithm";
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * The signing status of a jar.
+     */
+    enum Status {
+        SIGNED, UNSIGNED, PARTIALLY_SIGNED, INVALID
+    }
+
+    private final ResourceDigester digester;
+
+    private final File cacheFile;
+
+    private final ConcurrentMap<String, Verification> cache = new ConcurrentHashMap<String, Verification>();
+
+    private volatile boolean cacheModified = false;
+
+    /**
+     * @param digester
+     *            the digester computing the content digests the results are
+     *            cached by.
+     * @param cacheFile
+     *            the file the cache is loaded from and stored to, null for an
+     *            in memory cache only.
+     */
+    ResourceVerifier(ResourceDigester digester, File cacheFile)
+            throws IOException {
+        this.digester = digester;
+        this.cacheFile = cacheFile;
+        if (cacheFile != null && cacheFile.isFile()) {
+            Properties stored = new Properties();
+            InputStream input = new FileInputStream(cacheFile);
+            try {
+                stored.load(input);
+            } finally {
+                FileUtils.close(input);
+            }
+            // digests computed with another algorithm never match
+            if (digester.getAlgorithm().equals(stored.remove(ALGORITHM_KEY))) {
+                for (String digest : stored.stringPropertyNames()) {
+                    Verification verification = Verification.parse(stored
+                            .getProperty(digest));
+                    if (verification != null) {
+                        cache.put(digest, verification);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the verification of the given jar, from the cache if its content
+     *         has already been verified.
+     */
+    Verification verify(File jar) throws IOException {
+        String digest = digester.digest(jar);
+        Verification verification = cache.get(digest);
+        if (verification == null) {
+            verification = inspect(jar);
+            cache.put(digest, verification);
+            cacheModified = true;
+        }
+        return verification;
+    }
+
+    /**
+     * Verify the given jars in parallel.
+     * 
+     * @return the verifications indexed by jar, in the order of the given jars.
+     */
+    Map<File, Verification> verifyAll(Collection<File> jars, int threads) {
+        List<Callable<Verification>> jobs = new ArrayList<Callable<Verification>>(
+                jars.size());
+        for (final File jar : jars) {
+            jobs.add(new Callable<Verification>() {
+                public Verification call() throws IOException {
+                    return verify(jar);
+                }
+            });
+        }
+        List<Verification> verifications = Workers.invokeAll(jobs, threads);
+        Map<File, Verification> result = new LinkedHashMap<File, Verification>();
+        int i = 0;
+        for (File jar : jars) {
+            result.put(jar, verifications.get(i++));
+        }
+        return result;
+    }
+
+    /**
+     * Check that the given jars are all signed by the same signers as the main
+     * jar, and declare the same security attributes.
+     * 
+     * @return the problems found, empty if the jars are consistent.
+     */
+    static List<String> check(File mainJar,
+            Map<File, Verification> verifications) {
+        List<String> problems = new ArrayList<String>();
+        Verification main = verifications.get(mainJar);
+        if (main.getPermissions() == null) {
+            problems.add("the main jar " + mainJar + " has no "
+                    + PERMISSIONS_ATTRIBUTE + " attribute in its manifest");
+        }
+        for (Map.Entry<File, Verification> entry : verifications.entrySet()) {
+            File jar = entry.getKey();
+            Verification verification = entry.getValue();
+            switch (verification.getStatus()) {
+            case UNSIGNED:
+                problems.add(jar + " is not signed");
+                break;
+            case PARTIALLY_SIGNED:
+                problems.add(jar + " has unsigned entries or entries signed by other signers");
+                break;
+            case INVALID:
+                problems.add(jar + " can't be verified: " + verification.getMessage());
+                break;
+            default:
+                if (main.getStatus() == Status.SIGNED
+                        && !main.getSigners().equals(verification.getSigners())) {
+                    problems.add(jar + " is not signed by the signers of the main jar " + mainJar);
+                }
+                break;
+            }
+            checkAttribute(problems, jar, PERMISSIONS_ATTRIBUTE, main
+                    .getPermissions(), verification.getPermissions());
+            checkAttribute(problems, jar, CODEBASE_ATTRIBUTE, main.getCodebase(),
+                    verification.getCodebase());
+        }
+        return problems;
+    }
+
+    private static void checkAttribute(List<String> problems, File jar,
+            String name, String expected, String value) {
+        if (expected != null && value != null && !expected.equals(value)) {
+            problems.add(jar + " declares " + name + ": " + value
+                    + " whereas the main jar declares " + expected);
+        }
+    }
+
+    /**
+     * Store the cache in the cache file, if any and if it changed.
+     */
+    void store() throws IOException {
+        if (cacheFile == null || !cacheModified) {
+            return;
+        }
+        Properties stored = new Properties();
+        for (Map.Entry<String, Verification> entry : cache.entrySet()) {
+            stored.setProperty(entry.getKey(), entry.getValue().format());
+        }
+        stored.setProperty(ALGORITHM_KEY, digester.getAlgorithm());
+        File tmpFile = FileReplacer.createTempFile(cacheFile);
+        try {
+            OutputStream output = new FileOutputStream(tmpFile);
+            try {
+                stored.store(output, "partial jnlp task verification cache, do not edit");
+            } finally {
+                FileUtils.close(output);
+            }
+            FileReplacer.replace(tmpFile, cacheFile);
+        } finally {
+            FileUtils.delete(tmpFile);
+        }
+    }
+
+    /**
+     * Verify the signature of every entry of the jar, reading them entirely as
+     * the verification happens while reading, and read its manifest.
+     */
+    private static Verification inspect(File jar) {
+        JarFile jarFile;
+        try {
+            jarFile = new JarFile(jar, true);
+        } catch (IOException e) {
+            return new Verification(Status.INVALID, "", null, null, e.getMessage());
+        }
+        try {
+            String signers = null;
+            boolean unsigned = false;
+            boolean mixed = false;
+            byte[] buffer = new byte[8192];
+            for (Enumeration<JarEntry> entries = jarFile.entries(); entries
+                    .hasMoreElements();) {
+                JarEntry entry = entries.nextElement();
+                if (entry.isDirectory() || isMetaInf(entry.getName())) {
+                    continue;
+                }
+                InputStream input = jarFile.getInputStream(entry);
+                try {
+                    while (input.read(buffer) != -1) {
+                        // reading is verifying
+                    }
+                } finally {
+                    FileUtils.close(input);
+                }
+                String entrySigners = signers(entry.getCodeSigners());
+                if (entrySigners.length() == 0) {
+                    unsigned = true;
+                } else if (signers == null) {
+                    signers = entrySigners;
+                } else if (!signers.equals(entrySigners)) {
+                    mixed = true;
+                }
+            }
+            Status status;
+            if (signers == null) {
+                status = Status.UNSIGNED;
+            } else if (unsigned || mixed) {
+                status = Status.PARTIALLY_SIGNED;
+            } else {
+                status = Status.SIGNED;
+            }
+            Manifest manifest = jarFile.getManifest();
+            Attributes attributes = manifest == null ? new Attributes()
+                    : manifest.getMainAttributes();
+            return new Verification(status, signers == null ? "" : signers,
+                    attributes.getValue(PERMISSIONS_ATTRIBUTE), attributes
+                            .getValue(CODEBASE_ATTRIBUTE), null);
+        } catch (IOException e) {
+            return new Verification(Status.INVALID, "", null, null, e.getMessage());
+        } catch (SecurityException e) {
+            return new Verification(Status.INVALID, "", null, null, e.getMessage());
+        } catch (GeneralSecurityException e) {
+            return new Verification(Status.INVALID, "", null, null, e.getMessage());
+        } finally {
+            try {
+                jarFile.close();
+            } catch (IOException e) {
+                // already read
+            }
+        }
+    }
+
+    /**
+     * @return true for the entries directly in META-INF: the manifest, the
+     *         signature files and the jar index are not signed.
+     */
+    private static boolean isMetaInf(String name) {
+        return name.startsWith(META_INF)
+                && name.indexOf('/', META_INF.length()) == -1;
+    }
+
+    /**
+     * @return the sorted digests of the certificates of the signers, empty for
+     *         unsigned entries.
+     */
+    private static String signers(CodeSigner[] codeSigners)
+            throws GeneralSecurityException {
+        if (codeSigners == null) {
+            return "";
+        }
+        TreeSet<String> fingerprints = new TreeSet<String>();
+        for (CodeSigner codeSigner : codeSigners) {
+            List<? extends Certificate> certificates = codeSigner
+                    .getSignerCertPath().getCertificates();
+            if (!certificates.isEmpty()) {
+                MessageDigest digest = Digests.newDigest(Digests.SHA_256);
+                fingerprints.add(Digests.toHex(digest.digest(certificates
+                        .get(0).getEncoded())));
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        for (String fingerprint : fingerprints) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(fingerprint);
+        }
+        return result.toString();
+    }
+
+    /**
+     * The result of the verification of a jar.
+     */
+    static final class Verification {
+
+        private final Status status;
+        private final String signers;
+        private final String permissions;
+        private final String codebase;
+        private final String message;
+
+        Verification(Status status, String signers, String permissions,
+                String codebase, String message) {
+            this.status = status;
+            this.signers = signers;
+            this.permissions = permissions;
+            this.codebase = codebase;
+            this.message = message;
+        }
+
+        Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the digests of the certificates of the signers, empty if
+         *         the jar is not signed.
+         */
+        String getSigners() {
+            return signers;
+        }
+
+        String getPermissions() {
+            return permissions;
+        }
+
+        String getCodebase() {
+            return codebase;
+        }
+
+        /**
+         * @return why the jar can't be verified, null if it can.
+         */
+        String getMessage() {
+            return message;
+        }
+
+        private String format() {
+            return status + SEPARATOR + signers + SEPARATOR + nullToEmpty(permissions)
+                    + SEPARATOR + nullToEmpty(codebase) + SEPARATOR
+                    + nullToEmpty(message);
+        }
+
+        /**
+         * @return the verification formatted by {@link #format()}, null if the
+         *         value is not valid.
+         */
+        private static Verification parse(String value) {
+            String[] fields = value.split(SEPARATOR, -1);
+            if (fields.length != 5) {
+                return null;
+            }
+            try {
+                return new Verification(Status.valueOf(fields[0]), fields[1],
+                        emptyToNull(fields[2]), emptyToNull(fields[3]),
+                        emptyToNull(fields[4]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        private static String nullToEmpty(String value) {
+            return value == null ? "" : value;
+        }
+
+        private static String emptyToNull(String value) {
+            return value.length() == 0 ? null : value;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * Watches the directories of filesets, and of some other files, for changes.
+ * Only the directories where an included file changed are scanned again, and
+ * bursts of changes are debounced, so a build writing many jars triggers a
+ * single update.
+ */
+final class ResourceWatcher implements Closeable {
+
+    private final WatchService service;
+
+    private final List<IncrementalScanner> scanners = new ArrayList<IncrementalScanner>();
+
+    private final Set<File> watchedFiles = new HashSet<File>();
+
+    private final Map<WatchKey, File> keys = new HashMap<WatchKey, File>();
+
+    private final Set<File> registered = new HashSet<File>();
+
+    /**
+     * Scan the filesets and start watching them.
+     * 
+     * @param files
+     *            other files to watch, the main jars for instance.
+     */
+    ResourceWatcher(List<FileSet> filesets, Collection<File> files,
+            Project project) throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        try {
+            for (FileSet fileset : filesets) {
+                IncrementalScanner scanner = new IncrementalScanner(fileset, project);
+                scanners.add(scanner);
+                for (File dir : scanner.scanTree(scanner.getRoot())) {
+                    register(dir);
+                }
+            }
+            watch(files);
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Watch some more files, the jars found from the manifest Class-Path for
+     * instance.
+     */
+    void watch(Collection<File> files) throws IOException {
+        for (File file : files) {
+            watchedFiles.add(file.getAbsoluteFile());
+            register(file.getAbsoluteFile().getParentFile());
+        }
+    }
+
+    /**
+     * @return the files currently included by each fileset, in the order of
+     *         the filesets, as {@link ResourceIndex#scanFiles} scans them.
+     */
+    List<List<File>> getFiles() {
+        List<List<File>> files = new ArrayList<List<File>>(scanners.size());
+        for (IncrementalScanner scanner : scanners) {
+            files.add(scanner.getFiles());
+        }
+        return files;
+    }
+
+    /**
+     * Wait for a change of an included file or of a watched file, then for
+     * the end of the burst of changes.
+     * 
+     * @param quietPeriod
+     *            the time in milliseconds without change ending a burst.
+     * @param timeout
+     *            the maximum time to wait for a change in milliseconds, 0 to
+     *            wait forever.
+     * @return true if something changed, false if the timeout elapsed first.
+     */
+    boolean awaitChanges(long quietPeriod, long timeout) throws IOException,
+            InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        Set<File> changedDirs = new LinkedHashSet<File>();
+        boolean changed = false;
+        while (!changed) {
+            WatchKey key;
+            if (timeout > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                key = remaining > 0 ? service.poll(remaining,
+                        TimeUnit.MILLISECONDS) : null;
+                if (key == null) {
+                    return false;
+                }
+            } else {
+                key = service.take();
+            }
+            // debounce: wait for the end of the burst
+            while (key != null) {
+                changed |= process(key, changedDirs);
+                key = service.poll(quietPeriod, TimeUnit.MILLISECONDS);
+            }
+        }
+        for (File dir : changedDirs) {
+            for (IncrementalScanner scanner : scanners) {
+                if (scanner.isScanned(dir)) {
+                    scanner.rescan(dir);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if an included file or a watched file changed.
+     */
+    private boolean process(WatchKey key, Set<File> changedDirs)
+            throws IOException {
+        File dir = keys.get(key);
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                // events were lost, scan everything again
+                for (IncrementalScanner scanner : scanners) {
+                    for (File scanned : scanner.scanTree(scanner.getRoot())) {
+                        register(scanned);
+                    }
+                }
+                changed = true;
+                continue;
+            }
+            File file = new File(dir, ((Path) event.context()).toString());
+            if (watchedFiles.contains(file)) {
+                changed = true;
+            }
+            boolean deleted = event.kind() == StandardWatchEventKinds.ENTRY_DELETE;
+            for (IncrementalScanner scanner : scanners) {
+                if (scanner.isScanned(file)) {
+                    if (deleted) {
+                        scanner.remove(file);
+                    } else {
+                        // a touched or replaced sub directory
+                        for (File scanned : scanner.scanTree(file)) {
+                            register(scanned);
+                        }
+                    }
+                    // the listing of its parent changed too
+                    changedDirs.add(dir);
+                    changed = true;
+                } else if (file.isDirectory()) {
+                    if (scanner.couldHoldIncluded(file)) {
+                        for (File scanned : scanner.scanTree(file)) {
+                            register(scanned);
+                        }
+                        changedDirs.add(dir);
+                        changed = true;
+                    }
+                } else if (deleted ? scanner.isScannedFile(file) : scanner
+                        .isIncludedFile(file)) {
+                    changedDirs.add(dir);
+                    changed = true;
+                }
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+            registered.remove(dir);
+        }
+        return changed;
+    }
+
+    private void register(File dir) throws IOException {
+        if (registered.add(dir)) {
+            WatchKey key = dir.toPath().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            keys.put(key, dir);
+        }
+    }
+
+    public void close() throws IOException {
+        service.close();
+    }
+}
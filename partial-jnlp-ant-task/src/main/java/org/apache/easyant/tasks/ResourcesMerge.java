@@ -0,0 +1,139 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers to split elements into resources parts, one per set of qualifiers
+ * (os, arch, locale), and to merge new elements into the existing resources
+ * parts of a jnlp file instead of replacing them. Jars and native libraries
+ * are identified by their href, packages by their name: an element is added
+ * only if no element of the existing resources parts has the same identity,
+ * to the first existing part having the same qualifiers.
+ */
+final class ResourcesMerge {
+
+    static final String HREF_ATTRIBUTE = "href";
+    static final String NAME_ATTRIBUTE = "name";
+
+    /**
+     * The attributes restricting a resources part to some clients.
+     */
+    private static final String[] QUALIFIERS = {"os", "arch", "locale"};
+
+    private ResourcesMerge() {
+    }
+
+    /**
+     * @return the identity of an element.
+     */
+    static String key(String elementName, String href, String name) {
+        return elementName + ":" + (href != null ? href : name);
+    }
+
+    static String key(ResourceElement resource) {
+        return key(resource.getName(), resource.getAttribute(HREF_ATTRIBUTE),
+                resource.getAttribute(NAME_ATTRIBUTE));
+    }
+
+    /**
+     * @param attributeValues
+     *            the values of the qualifier attributes of a resources part, in
+     *            the order of {@link #qualifiers()}, null for missing ones.
+     * @return the identity of the resources part, the same as
+     *         {@link #sectionKey(ResourceElement)} for its elements.
+     */
+    static String sectionKey(String[] attributeValues) {
+        StringBuilder key = new StringBuilder();
+        for (String value : attributeValues) {
+            key.append(value == null ? "" : value).append('|');
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the identity of the resources part an element has to be
+     *         written in.
+     */
+    static String sectionKey(ResourceElement resource) {
+        String[] values = new String[QUALIFIERS.length];
+        for (int i = 0; i < QUALIFIERS.length; i++) {
+            values[i] = resource.getQualifiers().get(QUALIFIERS[i]);
+        }
+        return sectionKey(values);
+    }
+
+    /**
+     * Split elements into resources parts, keeping their order in each part.
+     * 
+     * @return the elements of each part by part identity, the one applying to
+     *         every client being always the first one, even if empty.
+     */
+    static Map<String, List<ResourceElement>> sections(
+            List<ResourceElement> resources) {
+        Map<String, List<ResourceElement>> sections = new LinkedHashMap<String, List<ResourceElement>>();
+        sections.put(sectionKey(new String[QUALIFIERS.length]),
+                new ArrayList<ResourceElement>(resources.size()));
+        for (ResourceElement resource : resources) {
+            String key = sectionKey(resource);
+            List<ResourceElement> section = sections.get(key);
+            if (section == null) {
+                section = new ArrayList<ResourceElement>();
+                sections.put(key, section);
+            }
+            section.add(resource);
+        }
+        return sections;
+    }
+
+    /**
+     * @return the attributes of the resources part holding the given
+     *         elements.
+     */
+    static Map<String, String> sectionAttributes(List<ResourceElement> section) {
+        if (section.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return section.get(0).getQualifiers();
+    }
+
+    static String[] qualifiers() {
+        return QUALIFIERS.clone();
+    }
+
+    /**
+     * @return the given elements not already in the existing ones, identified
+     *         by their key.
+     */
+    static List<ResourceElement> newResources(List<ResourceElement> resources,
+            Set<String> existingKeys) {
+        List<ResourceElement> newResources = new ArrayList<ResourceElement>();
+        for (ResourceElement resource : resources) {
+            if (!existingKeys.contains(key(resource))) {
+                newResources.add(resource);
+            }
+        }
+        return newResources;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Splits resources between eager and lazy downloads according to the classes
+ * loaded at startup. A jar serving at least one class loaded at startup is
+ * eager, any other jar is lazy and gets its own part, each of its packages
+ * being mapped to this part so the client downloads it on demand. A jar
+ * without classes stays eager, as no package would lead to its part.
+ */
+final class StartupClassification {
+
+    /**
+     * <code>-verbose:class</code> output of a Java 8 (or older) virtual machine.
+     */
+    private static final Pattern LEGACY_TRACE = Pattern
+            .compile("^\\[Loaded (\\S+) from .*\\]$");
+
+    /**
+     * <code>-verbose:class</code> or <code>-Xlog:class+load</code> output of a
+     * Java 9 (or newer) virtual machine.
+     */
+    private static final Pattern UNIFIED_TRACE = Pattern
+            .compile("\\[class,load\\]\\s+(\\S+)\\s+source:");
+
+    /**
+     * A plain class list, one class per line, like the one dumped by
+     * <code>-XX:DumpLoadedClassList</code>.
+     */
+    private static final Pattern CLASS_LIST = Pattern
+            .compile("^[\\w$.]+(/[\\w$]+)*$");
+
+    private static final Pattern INVALID_PART_CHARACTERS = Pattern
+            .compile("[^\\w.-]");
+
+    private final Map<File, String> parts = new LinkedHashMap<File, String>();
+
+    private final Map<String, String> packages = new LinkedHashMap<String, String>();
+
+    private StartupClassification() {
+    }
+
+    /**
+     * @return the names of all the classes listed in the given class loading
+     *         trace.
+     */
+    static Set<String> readTrace(File trace) throws IOException {
+        Set<String> classes = new HashSet<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(trace));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String className = parseTraceLine(line.trim());
+                if (className != null) {
+                    classes.add(className);
+                }
+            }
+        } finally {
+            FileUtils.close(reader);
+        }
+        return classes;
+    }
+
+    private static String parseTraceLine(String line) {
+        if (line.length() == 0 || line.startsWith("#")) {
+            return null;
+        }
+        Matcher matcher = LEGACY_TRACE.matcher(line);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        matcher = UNIFIED_TRACE.matcher(line);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        if (CLASS_LIST.matcher(line).matches()) {
+            return line.replace('/', '.');
+        }
+        return null;
+    }
+
+    /**
+     * Classify the given jars, their content being read in parallel.
+     * 
+     * @param startupClasses
+     *            the classes loaded at startup.
+     * @param jars
+     *            the jars to classify.
+     * @param threads
+     *            the maximum number of jars read in parallel.
+     */
+    static StartupClassification classify(final Set<String> startupClasses,
+            Collection<File> jars, int threads) {
+        List<Callable<Set<String>>> jobs = new ArrayList<Callable<Set<String>>>(
+                jars.size());
+        for (final File jar : jars) {
+            jobs.add(new Callable<Set<String>>() {
+                public Set<String> call() throws IOException {
+                    return lazyPackages(jar, startupClasses);
+                }
+            });
+        }
+        List<Set<String>> jarPackages = Workers.invokeAll(jobs, threads);
+
+        StartupClassification classification = new StartupClassification();
+        Set<String> partNames = new HashSet<String>();
+        int i = 0;
+        for (File jar : jars) {
+            Set<String> lazyPackages = jarPackages.get(i++);
+            if (lazyPackages == null || lazyPackages.isEmpty()) {
+                continue;
+            }
+            String part = partName(jar, partNames);
+            classification.parts.put(jar, part);
+            for (String packageName : lazyPackages) {
+                // a package split between lazy jars goes to the first one
+                if (!classification.packages.containsKey(packageName)) {
+                    classification.packages.put(packageName, part);
+                }
+            }
+        }
+        return classification;
+    }
+
+    /**
+     * @return the packages of the given jar, or null if the jar serves a class
+     *         loaded at startup. Empty for a jar without classes.
+     */
+    private static Set<String> lazyPackages(File jar, Set<String> startupClasses)
+            throws IOException {
+        Set<String> jarPackages = new HashSet<String>();
+        for (String entryName : JarContents.entryNames(jar)) {
+            String className = JarContents.className(entryName);
+            if (className == null) {
+                continue;
+            }
+            if (startupClasses.contains(className)) {
+                return null;
+            }
+            jarPackages.add(JarContents.packageName(className));
+        }
+        return jarPackages;
+    }
+
+    private static String partName(File jar, Set<String> partNames) {
+        String name = jar.getName();
+        if (name.toLowerCase(Locale.ENGLISH).endsWith(".jar")) {
+            name = name.substring(0, name.length() - ".jar".length());
+        }
+        name = INVALID_PART_CHARACTERS.matcher(name).replaceAll("_");
+        String part = name;
+        for (int suffix = 2; !partNames.add(part); suffix++) {
+            part = name + "-" + suffix;
+        }
+        return part;
+    }
+
+    boolean isLazy(File jar) {
+        return parts.containsKey(jar);
+    }
+
+    /**
+     * @return the part of the given lazy jar.
+     */
+    String getPart(File jar) {
+        return parts.get(jar);
+    }
+
+    int getLazyCount() {
+        return parts.size();
+    }
+
+    /**
+     * @return the part of every package served by a lazy jar, indexed by
+     *         package name.
+     */
+    Map<String, String> getPackages() {
+        return packages;
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.DTD;
+import javax.xml.stream.events.EntityReference;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Rewrites the jnlp file in a single streaming pass: every event is copied
+ * from the source to the output as it is read, except the resources parts
+ * which are dropped and replaced by the new ones (one per platform) just
+ * before the end of the root element. Memory usage doesn't depend on the size of the jnlp file.
+ */
+class StaxJNLPRewriter implements JNLPRewriter {
+
+    private static final String DEFAULT_ENCODING = "UTF-8";
+    private static final String LINE_SEPARATOR = "\n";
+    private static final String INDENT = "    ";
+
+    private final boolean merge;
+
+    /**
+     * @param merge
+     *            true to add the new elements to the existing resources parts
+     *            instead of replacing them. The jnlp file is then read twice:
+     *            once to find the existing elements, once to rewrite it.
+     */
+    StaxJNLPRewriter(boolean merge) {
+        this.merge = merge;
+    }
+
+    public void rewrite(File jnlpFile, OutputStream output,
+            List<ResourceElement> resources) throws Exception {
+        XmlProviders providers = XmlProviders.get();
+
+        if (merge) {
+            Set<String> existingKeys = new HashSet<String>();
+            scanResources(providers, jnlpFile, existingKeys);
+            resources = ResourcesMerge.newResources(resources, existingKeys);
+        }
+        // the parts still to write, by identity
+        Map<String, List<ResourceElement>> sections = ResourcesMerge
+                .sections(resources);
+
+        InputStream input = new BufferedInputStream(new FileInputStream(jnlpFile));
+        try {
+            XMLEventReader reader = providers.createEventReader(input);
+            XMLStreamWriter writer = null;
+            int depth = 0;
+            int skippedDepth = -1;
+            boolean skippedJustEnded = false;
+            String mergeTarget = null;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (writer == null) {
+                    writer = createWriter(providers, output, event);
+                }
+                if (skippedJustEnded) {
+                    skippedJustEnded = false;
+                    // don't leave an empty line where a resources part was
+                    if (event.isCharacters()
+                            && event.asCharacters().isWhiteSpace()) {
+                        continue;
+                    }
+                }
+                if (event.isStartElement()) {
+                    depth++;
+                    if (skippedDepth != -1) {
+                        continue;
+                    }
+                    StartElement start = event.asStartElement();
+                    if (depth == 2 && isResources(start)) {
+                        if (!merge) {
+                            skippedDepth = depth;
+                            continue;
+                        }
+                        String sectionKey = sectionKey(start);
+                        if (sections.containsKey(sectionKey)
+                                && !sections.get(sectionKey).isEmpty()) {
+                            // the new elements go to the first part of the
+                            // same platform only
+                            mergeTarget = sectionKey;
+                            writeStartElement(writer, start, false);
+                            continue;
+                        }
+                    }
+                    // the new resources parts go into the root, even empty
+                    if (depth > 1 && reader.peek() != null
+                            && reader.peek().isEndElement()) {
+                        reader.nextEvent();
+                        depth--;
+                        writeStartElement(writer, start, true);
+                    } else {
+                        writeStartElement(writer, start, false);
+                    }
+                } else if (event.isEndElement()) {
+                    if (skippedDepth != -1) {
+                        if (depth == skippedDepth) {
+                            skippedDepth = -1;
+                            skippedJustEnded = true;
+                        }
+                    } else {
+                        if (depth == 2 && mergeTarget != null) {
+                            writeMergedResources(writer, sections
+                                    .remove(mergeTarget));
+                            mergeTarget = null;
+                        } else if (depth == 1) {
+                            for (List<ResourceElement> section : sections
+                                    .values()) {
+                                if (!section.isEmpty()) {
+                                    writeResources(writer, section);
+                                }
+                            }
+                        }
+                        writer.writeEndElement();
+                    }
+                    depth--;
+                } else if (skippedDepth == -1) {
+                    copy(writer, event);
+                }
+            }
+            reader.close();
+            if (writer != null) {
+                writer.flush();
+                writer.close();
+            }
+        } finally {
+            FileUtils.close(input);
+        }
+    }
+
+    /**
+     * Collect the keys of the elements of the existing resources parts.
+     */
+    private void scanResources(XmlProviders providers, File jnlpFile,
+            Set<String> existingKeys) throws Exception {
+        InputStream input = new BufferedInputStream(new FileInputStream(jnlpFile));
+        try {
+            XMLEventReader reader = providers.createEventReader(input);
+            int depth = 0;
+            boolean inResources = false;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    StartElement start = event.asStartElement();
+                    if (depth == 2 && isResources(start)) {
+                        inResources = true;
+                    } else if (inResources) {
+                        existingKeys.add(ResourcesMerge.key(start.getName()
+                                .getLocalPart(), attribute(start,
+                                ResourcesMerge.HREF_ATTRIBUTE), attribute(
+                                start, ResourcesMerge.NAME_ATTRIBUTE)));
+                    }
+                } else if (event.isEndElement()) {
+                    if (depth == 2) {
+                        inResources = false;
+                    }
+                    depth--;
+                }
+            }
+            reader.close();
+        } finally {
+            FileUtils.close(input);
+        }
+    }
+
+    private boolean isResources(StartElement start) {
+        return DomJNLPRewriter.RESOURCES_ENTITY.equals(start.getName()
+                .getLocalPart());
+    }
+
+    private String sectionKey(StartElement start) {
+        String[] qualifiers = ResourcesMerge.qualifiers();
+        String[] values = new String[qualifiers.length];
+        for (int i = 0; i < qualifiers.length; i++) {
+            values[i] = attribute(start, qualifiers[i]);
+        }
+        return ResourcesMerge.sectionKey(values);
+    }
+
+    private String attribute(StartElement start, String name) {
+        Attribute attribute = start.getAttributeByName(new QName(name));
+        return attribute == null ? null : attribute.getValue();
+    }
+
+    private XMLStreamWriter createWriter(XmlProviders providers,
+            OutputStream output, XMLEvent firstEvent) throws XMLStreamException {
+        String encoding = DEFAULT_ENCODING;
+        if (firstEvent.isStartDocument()
+                && ((StartDocument) firstEvent).encodingSet()) {
+            encoding = ((StartDocument) firstEvent).getCharacterEncodingScheme();
+        }
+        return providers.createStreamWriter(output, encoding);
+    }
+
+    static void writeResources(XMLStreamWriter writer,
+            List<ResourceElement> resources) throws XMLStreamException {
+        writer.writeCharacters(INDENT);
+        writer.writeStartElement(DomJNLPRewriter.RESOURCES_ENTITY);
+        for (Map.Entry<String, String> qualifier : ResourcesMerge
+                .sectionAttributes(resources).entrySet()) {
+            writer.writeAttribute(qualifier.getKey(), qualifier.getValue());
+        }
+        for (ResourceElement resource : resources) {
+            writer.writeCharacters(LINE_SEPARATOR + INDENT + INDENT);
+            writeElement(writer, resource);
+        }
+        writer.writeCharacters(LINE_SEPARATOR + INDENT);
+        writer.writeEndElement();
+        writer.writeCharacters(LINE_SEPARATOR);
+    }
+
+    /**
+     * Write the new elements at the end of an existing resources part, just
+     * before its end tag.
+     */
+    private void writeMergedResources(XMLStreamWriter writer,
+            List<ResourceElement> resources) throws XMLStreamException {
+        for (ResourceElement resource : resources) {
+            writer.writeCharacters(INDENT);
+            writeElement(writer, resource);
+            writer.writeCharacters(LINE_SEPARATOR + INDENT);
+        }
+    }
+
+    static void writeElement(XMLStreamWriter writer, ResourceElement resource)
+            throws XMLStreamException {
+        writer.writeEmptyElement(resource.getName());
+        for (Map.Entry<String, String> attribute : resource.getAttributes()
+                .entrySet()) {
+            writer.writeAttribute(attribute.getKey(), attribute.getValue());
+        }
+    }
+
+    private void writeStartElement(XMLStreamWriter writer, StartElement start,
+            boolean empty) throws XMLStreamException {
+        String prefix = start.getName().getPrefix();
+        String namespace = start.getName().getNamespaceURI();
+        String localName = start.getName().getLocalPart();
+        if (empty) {
+            writer.writeEmptyElement(prefix, localName, namespace);
+        } else {
+            writer.writeStartElement(prefix, localName, namespace);
+        }
+        for (Iterator<?> it = start.getNamespaces(); it.hasNext();) {
+            Namespace ns = (Namespace) it.next();
+            if (ns.isDefaultNamespaceDeclaration()) {
+                writer.writeDefaultNamespace(ns.getNamespaceURI());
+            } else {
+                writer.writeNamespace(ns.getPrefix(), ns.getNamespaceURI());
+            }
+        }
+        for (Iterator<?> it = start.getAttributes(); it.hasNext();) {
+            Attribute attribute = (Attribute) it.next();
+            String attributePrefix = attribute.getName().getPrefix();
+            if (attributePrefix == null || "".equals(attributePrefix)) {
+                writer.writeAttribute(attribute.getName().getLocalPart(),
+                        attribute.getValue());
+            } else {
+                writer.writeAttribute(attributePrefix, attribute.getName()
+                        .getNamespaceURI(), attribute.getName().getLocalPart(),
+                        attribute.getValue());
+            }
+        }
+    }
+
+    private void copy(XMLStreamWriter writer, XMLEvent event)
+            throws XMLStreamException {
+        switch (event.getEventType()) {
+        case XMLEvent.START_DOCUMENT:
+            StartDocument startDocument = (StartDocument) event;
+            if (startDocument.encodingSet()) {
+                writer.writeStartDocument(startDocument
+                        .getCharacterEncodingScheme(), startDocument.getVersion());
+            } else {
+                writer.writeStartDocument(startDocument.getVersion());
+            }
+            writer.writeCharacters(LINE_SEPARATOR);
+            break;
+        case XMLEvent.CHARACTERS:
+        case XMLEvent.SPACE:
+        case XMLEvent.CDATA:
+            Characters characters = event.asCharacters();
+            if (characters.isCData()) {
+                writer.writeCData(characters.getData());
+            } else {
+                writer.writeCharacters(characters.getData());
+            }
+            break;
+        case XMLEvent.COMMENT:
+            writer.writeComment(((Comment) event).getText());
+            break;
+        case XMLEvent.PROCESSING_INSTRUCTION:
+            ProcessingInstruction pi = (ProcessingInstruction) event;
+            writer.writeProcessingInstruction(pi.getTarget(), pi.getData());
+            break;
+        case XMLEvent.DTD:
+            writer.writeDTD(((DTD) event).getDocumentTypeDeclaration());
+            break;
+        case XMLEvent.ENTITY_REFERENCE:
+            writer.writeEntityRef(((EntityReference) event).getName());
+            break;
+        case XMLEvent.END_DOCUMENT:
+            writer.writeEndDocument();
+            break;
+        default:
+            break;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The wall clock time spent in each phase of an execution of the task, and
+ * its counters. Phases run in parallel, like the rewrites of several jnlp
+ * files, add up their times. A disabled instance doesn't even read the
+ * clock.
+ * 
+ * <pre>
+ * long start = metrics.start();
+ * scan();
+ * start = metrics.stop("scan", start);
+ * </pre>
+ */
+final class TaskMetrics {
+
+    private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+    private final boolean enabled;
+
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+    private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+    TaskMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the start time of a phase, 0 if disabled.
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Add the time elapsed since the given start to a phase.
+     * 
+     * @return the current time, to start the next phase, 0 if disabled.
+     */
+    long stop(String phase, long start) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        add(phases, phase, now - start);
+        return now;
+    }
+
+    /**
+     * Add the given amount to a counter.
+     */
+    void count(String counter, long amount) {
+        if (enabled) {
+            add(counters, counter, amount);
+        }
+    }
+
+    private synchronized void add(Map<String, Long> values, String name,
+            long amount) {
+        Long value = values.get(name);
+        values.put(name, Long.valueOf(value == null ? amount : value.longValue()
+                + amount));
+    }
+
+    /**
+     * @return the time of each phase in milliseconds, in the order the phases
+     *         first ended.
+     */
+    synchronized Map<String, Long> getPhases() {
+        Map<String, Long> millis = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            millis.put(phase.getKey(), Long.valueOf(phase.getValue().longValue()
+                    / NANOS_PER_MILLI));
+        }
+        return millis;
+    }
+
+    synchronized Map<String, Long> getCounters() {
+        return new LinkedHashMap<String, Long>(counters);
+    }
+
+    /**
+     * Write the metrics as a JSON object holding the phases, in milliseconds,
+     * and the counters.
+     */
+    void write(JsonWriter json) throws IOException {
+        json.beginObject();
+        json.name("phases").beginObject();
+        for (Map.Entry<String, Long> phase : getPhases().entrySet()) {
+            json.name(phase.getKey()).value(phase.getValue().longValue());
+        }
+        json.endObject();
+        json.name("counters").beginObject();
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            json.name(counter.getKey()).value(counter.getValue().longValue());
+        }
+        json.endObject();
+        json.endObject();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Runs independent jobs on a bounded pool of worker threads, or on virtual
+ * threads for jobs mostly waiting for I/O, when the JVM has them.
+ */
+final class Workers {
+
+    /** Executors.newVirtualThreadPerTaskExecutor(), null before Java 21. */
+    private static final Method VIRTUAL_EXECUTOR = lookupVirtualExecutor();
+
+    private Workers() {
+    }
+
+    private static Method lookupVirtualExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the default number of worker threads.
+     */
+    static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Run all the given jobs, on at most the given number of threads, and wait
+     * for them to complete.
+     * 
+     * @return the results of the jobs, in the order of the jobs.
+     * @throws BuildException
+     *             if a job fails, the remaining jobs being cancelled.
+     */
+    static <T> List<T> invokeAll(List<? extends Callable<T>> jobs, int threads)
+            throws BuildException {
+        List<T> results = new ArrayList<T>(jobs.size());
+        if (threads <= 1 || jobs.size() <= 1) {
+            for (Callable<T> job : jobs) {
+                results.add(call(job));
+            }
+            return results;
+        }
+        return invokeAll(jobs, Executors.newFixedThreadPool(Math.min(threads,
+                jobs.size())));
+    }
+
+    /**
+     * Run all the given jobs, which spend most of their time waiting for I/O
+     * (like scanning directories of a network file system), and wait for them
+     * to complete. They all run at once on virtual threads when the JVM has
+     * them, on at most the given number of threads otherwise.
+     * 
+     * @return the results of the jobs, in the order of the jobs.
+     * @throws BuildException
+     *             if a job fails, the remaining jobs being cancelled.
+     */
+    static <T> List<T> invokeAllBlocking(List<? extends Callable<T>> jobs,
+            int threads) throws BuildException {
+        ExecutorService executor = threads > 1 && jobs.size() > 1 ? newVirtualExecutor()
+                : null;
+        if (executor == null) {
+            return invokeAll(jobs, threads);
+        }
+        return invokeAll(jobs, executor);
+    }
+
+    /**
+     * @return an executor starting a virtual thread per job, null if the JVM
+     *         doesn't support them.
+     */
+    private static ExecutorService newVirtualExecutor() {
+        if (VIRTUAL_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // a preview feature not enabled
+            return null;
+        }
+    }
+
+    private static <T> List<T> invokeAll(List<? extends Callable<T>> jobs,
+            ExecutorService executor) throws BuildException {
+        List<T> results = new ArrayList<T>(jobs.size());
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>(jobs.size());
+            for (Callable<T> job : jobs) {
+                futures.add(executor.submit(job));
+            }
+            for (Future<T> future : futures) {
+                results.add(get(future));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T call(Callable<T> job) throws BuildException {
+        try {
+            return job.call();
+        } catch (BuildException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BuildException(e.getMessage(), e);
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws BuildException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BuildException("interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BuildException) {
+                throw (BuildException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new BuildException(cause.getMessage(), cause);
+        }
+    }
+}
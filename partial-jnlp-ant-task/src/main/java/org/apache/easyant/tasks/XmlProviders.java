@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+import org.w3c.dom.ls.DOMImplementationLS;
+
+/**
+ * The XML implementations used to rewrite jnlp files, looked up once per
+ * class loader. Looking them up scans the class path for providers, which
+ * costs far more than a rewrite of a small jnlp file.
+ * <p>
+ * The implementations and factories are shared between threads: they are
+ * only used to create parsers, serializers, readers and writers, which are
+ * never shared.
+ * </p>
+ */
+final class XmlProviders {
+
+    private static final String DOM_IMPLEMENTATION = "LS";
+
+    /**
+     * Cached providers, by class loader. The class loaders are weakly
+     * referenced and the providers softly referenced, so neither is kept in
+     * memory by this cache alone.
+     */
+    private static final Map<ClassLoader, SoftReference<XmlProviders>> PROVIDERS = new WeakHashMap<ClassLoader, SoftReference<XmlProviders>>();
+
+    private final DOMImplementationLS domImplementation;
+
+    private final XMLInputFactory inputFactory;
+
+    private final XMLOutputFactory outputFactory;
+
+    private XmlProviders(DOMImplementationLS domImplementation,
+            XMLInputFactory inputFactory, XMLOutputFactory outputFactory) {
+        this.domImplementation = domImplementation;
+        this.inputFactory = inputFactory;
+        this.outputFactory = outputFactory;
+    }
+
+    /**
+     * @return the providers of the context class loader of the current thread.
+     */
+    static XmlProviders get() throws ClassNotFoundException,
+            InstantiationException, IllegalAccessException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        synchronized (PROVIDERS) {
+            SoftReference<XmlProviders> cached = PROVIDERS.get(classLoader);
+            XmlProviders providers = cached == null ? null : cached.get();
+            if (providers == null) {
+                providers = lookup();
+                PROVIDERS.put(classLoader, new SoftReference<XmlProviders>(
+                        providers));
+            }
+            return providers;
+        }
+    }
+
+    /**
+     * Look the providers up, without cache.
+     */
+    static XmlProviders lookup() throws ClassNotFoundException,
+            InstantiationException, IllegalAccessException {
+        DOMImplementationRegistry domRegistry = DOMImplementationRegistry
+                .newInstance();
+        DOMImplementationLS domImplementation = (DOMImplementationLS) domRegistry
+                .getDOMImplementation(DOM_IMPLEMENTATION);
+
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        // never go on the network to resolve a doctype
+        inputFactory.setProperty(
+                XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+        return new XmlProviders(domImplementation, inputFactory, outputFactory);
+    }
+
+    DOMImplementationLS getDomImplementation() {
+        return domImplementation;
+    }
+
+    /**
+     * StAX doesn't guarantee factories to be thread safe, so readers are
+     * created one at a time.
+     */
+    XMLEventReader createEventReader(InputStream input) throws XMLStreamException {
+        synchronized (inputFactory) {
+            return inputFactory.createXMLEventReader(input);
+        }
+    }
+
+    /**
+     * StAX doesn't guarantee factories to be thread safe, so writers are
+     * created one at a time.
+     */
+    XMLStreamWriter createStreamWriter(OutputStream output, String encoding)
+            throws XMLStreamException {
+        synchronized (outputFactory) {
+            return outputFactory.createXMLStreamWriter(output, encoding);
+        }
+    }
+}
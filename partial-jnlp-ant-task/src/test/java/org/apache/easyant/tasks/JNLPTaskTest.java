@@ -0,0 +1,603 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.easyant.tasks;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.tools.ant.BuildFileTest;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.util.FileUtils;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+public class JNLPTaskTest extends BuildFileTest {
+
+    public JNLPTaskTest() {
+        super();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        configureProject("src/test/resources/org/apache/easyant/tasks/JNLPTask/build.xml");
+        executeTarget("setUp");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executeTarget("tearDown");
+    }
+
+    private String readJnlp() throws IOException {
+        return readJnlp(new File(getProject().getProperty("output.jnlp")));
+    }
+
+    private String readJnlp(File jnlpFile) throws IOException {
+        FileReader reader = new FileReader(jnlpFile);
+        try {
+            return FileUtils.readFully(reader);
+        } finally {
+            FileUtils.close(reader);
+        }
+    }
+
+    private void assertJnlpContaining(String substring) throws IOException {
+        String jnlp = readJnlp();
+        assertTrue("expected jnlp to contain \"" + substring + "\" jnlp was \""
+                + jnlp + "\"", jnlp.indexOf(substring) >= 0);
+    }
+
+    private void assertJnlpNotContaining(String substring) throws IOException {
+        String jnlp = readJnlp();
+        assertFalse("didn't expect jnlp to contain \"" + substring
+                + "\" jnlp was \"" + jnlp + "\"", jnlp.indexOf(substring) >= 0);
+    }
+
+    @Test
+    public void testBasicUsage() throws IOException {
+        executeTarget("basicUsage");
+        assertLogContaining("JNLP modification done !");
+        assertJnlpNotContaining("obsolete.jar");
+        assertJnlpContaining("main.jar");
+        assertJnlpContaining("lib/dependency1.jar");
+        // files included from sub directories are not dropped
+        assertJnlpContaining("lib/nested/dependency2.jar");
+        assertJnlpContaining("<title>application</title>");
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        executeTarget("streaming");
+        assertJnlpNotContaining("obsolete.jar");
+        assertJnlpContaining("lib/nested/dependency2.jar");
+        assertJnlpContaining("<title>application</title>");
+    }
+
+    @Test
+    public void testStreamingMatchesDom() throws Exception {
+        executeTarget("streamingMatchesDom");
+        File outputDir = new File(getProject().getProperty("output.dir"));
+        String dom = canonical(new File(outputDir, "dom.jnlp"));
+        assertTrue(dom.indexOf("lib/nested/dependency2.jar") >= 0);
+        assertEquals(dom, canonical(new File(outputDir, "stream.jnlp")));
+        String emptyDom = canonical(new File(outputDir, "dom-empty.jnlp"));
+        assertTrue(emptyDom.indexOf("lib/nested/dependency2.jar") >= 0);
+        assertEquals(emptyDom, canonical(new File(outputDir, "stream-empty.jnlp")));
+    }
+
+    /**
+     * @return the elements, attributes and text of the xml file, whatever
+     *         the indentation and the order of the attributes.
+     */
+    private String canonical(File xmlFile) throws Exception {
+        StringBuilder canonical = new StringBuilder();
+        appendCanonical(DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(xmlFile).getDocumentElement(), canonical);
+        return canonical.toString();
+    }
+
+    private void appendCanonical(Element element, StringBuilder canonical) {
+        canonical.append('<').append(element.getTagName());
+        Map<String, String> attributes = new TreeMap<String, String>();
+        NamedNodeMap attributeNodes = element.getAttributes();
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            attributes.put(attributeNodes.item(i).getNodeName(), attributeNodes
+                    .item(i).getNodeValue());
+        }
+        canonical.append(attributes).append('>');
+        for (Node child = element.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                appendCanonical((Element) child, canonical);
+            } else if (child.getNodeType() == Node.TEXT_NODE) {
+                canonical.append(child.getNodeValue().trim());
+            }
+        }
+        canonical.append("</").append(element.getTagName()).append('>');
+    }
+
+    @Test
+    public void testFlatPath() throws IOException {
+        executeTarget("flatPath");
+        assertJnlpContaining("http://myserver.com/dependency1.jar");
+        assertJnlpNotContaining("dependency2.jar");
+    }
+
+    @Test
+    public void testIncremental() throws IOException {
+        executeTarget("incremental");
+        assertLogContaining("JNLP modification done !");
+        assertLogContaining("is up to date");
+        assertJnlpContaining("lib/dependency1.jar");
+    }
+
+    @Test
+    public void testJnlpSet() throws IOException {
+        executeTarget("jnlpSet");
+        assertJnlpContaining("main.jar");
+        assertJnlpContaining("lib/nested/dependency2.jar");
+        String second = readJnlp(new File(getProject().getProperty("output.dir"),
+                "second.jnlp"));
+        assertTrue(second.indexOf("lib/nested/dependency2.jar") >= 0);
+        assertTrue(second.indexOf("lib/dependency1.jar") >= 0);
+        assertTrue(second.indexOf("main.jar") < 0);
+    }
+
+    @Test
+    public void testExtension() throws IOException {
+        executeTarget("extension");
+        String extension = readJnlp(new File(getProject().getProperty("output.dir"),
+                "framework.jnlp"));
+        assertTrue(extension.indexOf("<component-desc") >= 0);
+        assertTrue(extension.indexOf("<all-permissions") >= 0);
+        assertTrue(extension.indexOf("lib/nested/dependency2.jar") >= 0);
+        assertTrue(extension.indexOf("native-linux.jar") >= 0);
+        assertTrue(extension.indexOf("native-windows.jar") < 0);
+        assertJnlpContaining("<extension");
+        assertJnlpContaining("href=\"framework.jnlp\"");
+        assertJnlpNotContaining("dependency2.jar");
+        assertJnlpNotContaining("native-linux.jar");
+        String second = readJnlp(new File(getProject().getProperty("output.dir"),
+                "second.jnlp"));
+        assertTrue(second.indexOf("native-windows.jar") >= 0);
+        assertTrue(second.indexOf("native-linux.jar") < 0);
+        assertTrue(second.indexOf("framework.jnlp") >= 0);
+    }
+
+    @Test
+    public void testSizesAndDigests() throws IOException {
+        executeTarget("sizesAndDigests");
+        assertJnlpContaining("size=\"15\"");
+        assertJnlpContaining("sha256=\"d2a65afc09df1e7717041d3a144dcc8528617c5004f9b1802433fa05a779813c\"");
+        assertTrue(new File(getProject().getProperty("output.dir"),
+                "digests.properties").exists());
+    }
+
+    @Test
+    public void testDeduplicate() throws IOException {
+        executeTarget("deduplicate");
+        assertLogContaining("dependency2.jar is dropped, it duplicates");
+        assertJnlpContaining("lib/dependency1.jar");
+        assertJnlpNotContaining("dependency2.jar");
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        executeTarget("merge");
+        assertJnlpContaining("obsolete.jar");
+        assertJnlpContaining("lib/dependency1.jar");
+        assertEquals(1, readJnlp().split("<resources").length - 1);
+    }
+
+    @Test
+    public void testPlatforms() throws IOException {
+        executeTarget("platforms");
+        assertPlatforms();
+    }
+
+    @Test
+    public void testPlatformsStreaming() throws IOException {
+        getProject().setProperty("streaming", "true");
+        executeTarget("platforms");
+        assertPlatforms();
+    }
+
+    private void assertPlatforms() throws IOException {
+        String jnlp = readJnlp();
+        assertEquals(3, jnlp.split("<resources").length - 1);
+        String linux = section(jnlp, "native-linux.jar");
+        assertTrue(linux, linux.indexOf("os=\"Linux\"") >= 0);
+        assertTrue(linux, linux.indexOf("arch=\"amd64\"") >= 0);
+        assertTrue(linux, linux.indexOf("<nativelib") >= 0);
+        assertTrue(linux, linux.indexOf("main=") < 0);
+        String windows = section(jnlp, "native-windows.jar");
+        assertTrue(windows, windows.indexOf("os=\"Windows\"") >= 0);
+        assertTrue(windows, windows.indexOf("arch=") < 0);
+        String common = section(jnlp, "main.jar");
+        assertTrue(common, common.indexOf("lib/dependency1.jar") >= 0);
+        assertTrue(common, common.indexOf("os=") < 0);
+    }
+
+    /**
+     * @return the resources part of the jnlp holding the given href.
+     */
+    private String section(String jnlp, String href) {
+        int start = jnlp.lastIndexOf("<resources", jnlp.indexOf(href));
+        return jnlp.substring(start, jnlp.indexOf("</resources>", start));
+    }
+
+    @Test
+    public void testBudget() throws IOException {
+        executeTarget("budget");
+        // the common jars and the native library of windows, the biggest one
+        assertEquals("60", getProject().getProperty("budget.eager.bytes"));
+        assertEquals("0", getProject().getProperty("budget.lazy.bytes"));
+        assertEquals("main.jar (15 bytes), dependency1.jar (15 bytes)",
+                getProject().getProperty("budget.top"));
+        String report = readJnlp(new File(getProject().getProperty("output.dir"),
+                "budget.json"));
+        assertTrue(report.indexOf("\"eagerBytes\": 60") >= 0);
+        assertTrue(report.indexOf("\"platform\": \"Windows\"") >= 0);
+    }
+
+    @Test
+    public void testBudgetExceeded() throws IOException {
+        expectBuildException("budgetExceeded", "the eager download is over the budget");
+        assertJnlpNotContaining("dependency1.jar");
+    }
+
+    @Test
+    public void testExtensionBudgetExceeded() throws IOException {
+        expectBuildException("extensionBudgetExceeded", "the eager download is over the budget");
+        // nothing is written, the extension included
+        assertFalse(new File(getProject().getProperty("output.dir"), "framework.jnlp")
+                .exists());
+        assertJnlpNotContaining("<extension");
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        executeTarget("metrics");
+        assertEquals("2", getProject().getProperty("metrics.resources"));
+        assertEquals("1", getProject().getProperty("metrics.jnlpFilesWritten"));
+        assertEquals(String.valueOf(new File(getProject().getProperty("output.jnlp"))
+                .length()), getProject().getProperty("metrics.bytesWritten"));
+        assertNotNull(getProject().getProperty("metrics.time.scan"));
+        assertNotNull(getProject().getProperty("metrics.time.parse"));
+        assertNotNull(getProject().getProperty("metrics.time.serialize"));
+        assertNotNull(getProject().getProperty("metrics.time.replace"));
+        String metrics = readJnlp(new File(getProject().getProperty("output.dir"),
+                "metrics.json"));
+        assertTrue(metrics.indexOf("\"total\": ") >= 0);
+    }
+
+    @Test
+    public void testTemplate() throws IOException {
+        executeTarget("template");
+        String first = readJnlp(new File(getProject().getProperty("output.dir"),
+                "first.jnlp"));
+        assertTrue(first.indexOf("href=\"first.jnlp\"") >= 0);
+        assertTrue(first.indexOf("<title>application</title>") >= 0);
+        assertTrue(first.indexOf("<all-permissions/>") >= 0);
+        assertTrue(first.indexOf("<j2se version=\"1.6+\"/>") >= 0);
+        assertTrue(first.indexOf("lib/dependency1.jar") >= 0);
+        assertTrue(first.indexOf("<resources os=\"Linux\">") >= 0);
+        assertTrue(first.indexOf("<property name=\"shared\" value=\"all\"/>") >= 0);
+        assertTrue(first.indexOf("<property name=\"customer\" value=\"first\"/>") >= 0);
+        assertTrue(first.indexOf("<argument>-verbose</argument>") >= 0);
+        String second = readJnlp(new File(getProject().getProperty("output.dir"),
+                "customers/second.jnlp"));
+        assertTrue(second.indexOf("<property name=\"customer\" value=\"second\"/>") >= 0);
+        assertTrue(second.indexOf("value=\"first\"") < 0);
+    }
+
+    @Test
+    public void testJarIndex() throws IOException {
+        executeTarget("jarIndex");
+        ZipFile mainJar = new ZipFile(new File(getProject().getProperty("index.dir"),
+                "main.jar"));
+        try {
+            ZipEntry entry = mainJar.getEntry("META-INF/INDEX.LIST");
+            assertNotNull(entry);
+            Reader reader = new InputStreamReader(mainJar.getInputStream(entry), "UTF-8");
+            try {
+                String index = FileUtils.readFully(reader);
+                assertTrue(index, index.startsWith("JarIndex-Version: 1.0\n\nmain.jar\nlib\n"));
+                assertTrue(index, index.indexOf("\nlib/natives.jar\nnatives\n") >= 0);
+            } finally {
+                FileUtils.close(reader);
+            }
+            // the other entries are kept
+            assertNotNull(mainJar.getEntry("lib/nested/dependency2.jar"));
+        } finally {
+            mainJar.close();
+        }
+    }
+
+    @Test
+    public void testJarIndexSigned() throws IOException {
+        expectBuildExceptionContaining("jarIndexSigned", "the signed main jar can't be modified",
+                "the jar is signed");
+        ZipFile mainJar = new ZipFile(new File(getProject().getProperty("signed.dir"),
+                "main.jar"));
+        try {
+            assertNull(mainJar.getEntry("META-INF/INDEX.LIST"));
+            assertNotNull(mainJar.getEntry("META-INF/TEST.SF"));
+        } finally {
+            mainJar.close();
+        }
+    }
+
+    @Test
+    public void testVerify() {
+        executeTarget("verify");
+        assertLogContaining("JNLP modification done !");
+        assertTrue(new File(getProject().getProperty("output.dir"),
+                "verify.properties").isFile());
+    }
+
+    @Test
+    public void testVerifyUnsigned() {
+        expectBuildException("verifyUnsigned", "a resource is not signed");
+        assertLogContaining("unsigned.jar is not signed");
+    }
+
+    @Test
+    public void testBundle() throws IOException {
+        executeTarget("bundle");
+        assertLogContaining("3 jars bundled in");
+        assertJnlpContaining("bundles/bundle-");
+        assertJnlpNotContaining("first.jar");
+        assertJnlpNotContaining("second.jar");
+        assertJnlpNotContaining("fourth.jar");
+        // its manifest attributes would be lost in a bundle
+        assertJnlpContaining("third.jar");
+        assertLogContaining("the entry lib/nested/dependency2.jar is found in several jars");
+        File[] bundles = new File(getProject().getProperty("bundle.dir"), "bundles")
+                .listFiles();
+        assertEquals(1, bundles.length);
+        ZipFile bundle = new ZipFile(bundles[0]);
+        try {
+            assertNotNull(bundle.getEntry("lib/dependency1.jar"));
+            assertNotNull(bundle.getEntry("natives/linux/native-linux.jar"));
+        } finally {
+            bundle.close();
+        }
+    }
+
+    @Test
+    public void testContentAddressed() throws IOException {
+        executeTarget("contentAddressed");
+        String name = "dependency1-d2a65afc09df1e77.jar";
+        assertJnlpContaining("href=\"http://cdn.example.com/app/" + name + "\"");
+        assertJnlpContaining("http://cdn.example.com/app/main-d2a65afc09df1e77.jar");
+        assertTrue(new File(getProject().getProperty("output.dir"), "cdn/" + name)
+                .isFile());
+    }
+
+    @Test
+    public void testVersions() throws IOException {
+        executeTarget("versions");
+        String version = "d2a65afc09df1e77";
+        assertJnlpContaining("version=\"" + version + "\"");
+        File versionDir = new File(getProject().getProperty("output.dir"), "versions");
+        assertTrue(new File(versionDir, "main__V" + version + ".jar").isFile());
+        assertTrue(new File(versionDir, "dependency1__V" + version + ".jar").isFile());
+        assertTrue(new File(versionDir, "nested/dependency2__V" + version + ".jar").isFile());
+    }
+
+    @Test
+    public void testPreviousRelease() throws IOException {
+        executeTarget("previousRelease");
+        assertLogContaining("1 changed jars");
+        File releaseDir = new File(getProject().getProperty("output.dir"), "release");
+        // jars are matched by relative path, the unchanged b/x.jar has no JarDiff
+        String[] changed = new File(releaseDir, "versions/a").list();
+        String[] unchanged = new File(releaseDir, "versions/b").list();
+        assertEquals(2, changed.length);
+        String jar = changed[0].endsWith(".jar") ? changed[0] : changed[1];
+        String diff = changed[0].endsWith(".jar") ? changed[1] : changed[0];
+        assertTrue(jar, jar.matches("x__V\\w+\\.jar"));
+        assertTrue(diff, diff.matches("x__V\\w+__V\\w+\\.jardiff"));
+        // from the previous version to the published one
+        assertTrue(diff, diff.endsWith(jar.substring(1, jar.length() - 4) + ".jardiff"));
+        assertEquals(1, unchanged.length);
+        assertTrue(unchanged[0], unchanged[0].matches("x__V\\w+\\.jar"));
+        // nothing is written into the resource directories
+        assertEquals(1, new File(releaseDir, "current/a").list().length);
+        assertEquals(1, new File(releaseDir, "current/b").list().length);
+    }
+
+    @Test
+    public void testPrecompress() throws IOException {
+        executeTarget("precompress");
+        String firstRun = readJnlp();
+        // the variants of the first run are not taken for resources
+        executeTarget("precompress");
+        assertEquals(firstRun, readJnlp());
+        assertJnlpNotContaining(".gz");
+        assertJnlpNotContaining(".deflate");
+        File variants = new File(getProject().getProperty("output.dir"),
+                "precompress/variants");
+        assertTrue(new File(variants, "dependency1.jar.gz").isFile());
+        assertTrue(new File(variants, "nested/dependency2.jar.deflate").isFile());
+        assertTrue(new File(variants, "main.jar.gz").isFile());
+        assertFalse(new File(variants, "dependency1.jar.gz.gz").exists());
+        assertEquals(2, new File(getProject().getProperty("output.dir"),
+                "precompress/lib").list().length);
+    }
+
+    @Test
+    public void testWatchTimeout() throws IOException {
+        executeTarget("watch");
+        assertLogContaining("watching the resources for changes...");
+        assertLogContaining("no change for 500 ms, watch stopped");
+        assertJnlpContaining("lib/nested/dependency2.jar");
+    }
+
+    @Test
+    public void testWatchChanges() throws Exception {
+        File watched = new File(getProject().getProperty("output.dir"), "watched");
+        File changedJar = new File(watched, "dependency1.jar");
+        // a touched sub directory keeps its files
+        executeWatch("watchChanges", changedJar, null, new File(watched, "nested"));
+
+        assertJnlpContaining("size=\"" + changedJar.length() + "\"");
+        // the files keep the order of the first scan, sorted by relative path
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(watched);
+        scanner.scan();
+        String[] fileNames = scanner.getIncludedFiles();
+        Arrays.sort(fileNames);
+        String jnlp = readJnlp();
+        int previous = -1;
+        for (String fileName : fileNames) {
+            int position = jnlp.indexOf(new File(watched, fileName).toURI().toString());
+            assertTrue(fileName + " in " + jnlp, position > previous);
+            previous = position;
+        }
+        assertEquals(4, scanner.getIncludedFilesCount());
+    }
+
+    @Test
+    public void testWatchDescriptorFileset() throws Exception {
+        File changedJar = new File(getProject().getProperty("output.dir"),
+                "descriptor/dependency1.jar");
+        executeWatch("watchDescriptorFileset", changedJar, null, null);
+        assertJnlpContaining("size=\"" + changedJar.length() + "\"");
+    }
+
+    @Test
+    public void testWatchClassPath() throws Exception {
+        File classPathDir = new File(getProject().getProperty("output.dir"), "classpath");
+        File changedJar = new File(classPathDir, "lib/first.jar");
+        // its manifest is read again, it must stay a jar
+        executeWatch("watchClassPath", changedJar, new File(classPathDir, "bigger.jar"),
+                null);
+        assertJnlpContaining("size=\"" + changedJar.length() + "\"");
+    }
+
+    /**
+     * Execute a watch target, change a jar and touch a directory once the
+     * resources are watched, then wait for the end of the watch.
+     * 
+     * @param replacement
+     *            the new content of the jar, null to write some text.
+     */
+    private void executeWatch(final String target, File changedJar, File replacement,
+            File touchedDir) throws Exception {
+        final Throwable[] failure = new Throwable[1];
+        Thread watch = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    executeTarget(target);
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        watch.start();
+        for (int i = 0; i < 200 && getLog().indexOf("watching the resources") < 0; i++) {
+            Thread.sleep(50);
+        }
+        if (replacement != null) {
+            FileUtils.getFileUtils().copyFile(replacement, changedJar, null, true);
+        } else {
+            FileWriter writer = new FileWriter(changedJar);
+            try {
+                writer.write("a bigger " + changedJar.getName());
+            } finally {
+                FileUtils.close(writer);
+            }
+        }
+        if (touchedDir != null) {
+            assertTrue(touchedDir.setLastModified(touchedDir.lastModified() - 60000));
+        }
+        watch.join(20000);
+        assertFalse("watch still running", watch.isAlive());
+        assertNull(failure[0]);
+    }
+
+    @Test
+    public void testManifestClassPath() throws IOException {
+        executeTarget("manifestClassPath");
+        assertJnlpContaining("classpath/lib/first.jar");
+        assertJnlpContaining("classpath/lib/second.jar");
+        assertJnlpNotContaining("unreachable.jar");
+        assertLogContaining("the Class-Path entry missing.jar");
+        // the main jar is not added again as a resource
+        assertEquals(1, readJnlp().split("classpath/main.jar").length - 1);
+    }
+
+    @Test
+    public void testStartupTraceVerbose() throws Exception {
+        executeTarget("startupTraceVerbose");
+        assertStartupClassification();
+    }
+
+    @Test
+    public void testStartupTraceClassList() throws Exception {
+        executeTarget("startupTraceClassList");
+        assertStartupClassification();
+    }
+
+    private void assertStartupClassification() throws Exception {
+        String jnlp = canonical(new File(getProject().getProperty("output.jnlp")));
+        // the jar serving a startup class is eager
+        assertTrue(jnlp, jnlp.indexOf("{download=eager, href=" + startupJar("lib/startup.jar")
+                + ", main=false}") >= 0);
+        // any other jar is lazy, in its own part holding its packages
+        assertTrue(jnlp, jnlp.indexOf("{download=lazy, href=" + startupJar("lib/report.jar")
+                + ", main=false, part=report}") >= 0);
+        assertTrue(jnlp, jnlp.indexOf("<package{name=com.example.report.*, part=report}>") >= 0);
+        assertTrue(jnlp, jnlp.indexOf("<package{name=com.example.report.chart.*, part=report}>") >= 0);
+        // no package could map to the part of a jar without classes
+        assertTrue(jnlp, jnlp.indexOf("{download=eager, href=" + startupJar("lib/images.jar")
+                + ", main=false}") >= 0);
+        assertTrue(jnlp, jnlp.indexOf("part=images") < 0);
+        // native libraries are always eager, without part nor package
+        assertTrue(jnlp, jnlp.indexOf("<nativelib{download=eager, href="
+                + startupJar("natives/natives.jar") + "}>") >= 0);
+        assertTrue(jnlp, jnlp.indexOf("part=natives") < 0);
+        assertTrue(jnlp, jnlp.indexOf("com.example.natives") < 0);
+    }
+
+    private String startupJar(String path) {
+        return new File(getProject().getProperty("output.dir"), "startup/" + path)
+                .toURI().toString();
+    }
+
+    @Test
+    public void testWithoutFileset() {
+        expectBuildException("withoutFileset", "the parameter filesets can not be empty");
+    }
+}